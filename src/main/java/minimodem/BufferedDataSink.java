@@ -0,0 +1,92 @@
+/*
+ * minimodem4j
+ * BufferedDataSink.java
+ */
+package minimodem;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered output of the receiver
+ * Accumulates decoded data in a byte array and writes it to the output
+ * stream at once (then flushes the stream) when
+ *   - the receiver flushes the sink (carrier lost, end of stream)
+ *   - the buffer is full
+ *   - the oldest buffered byte waits for maxDelayMillis or longer
+ *     (checked on write and on poll, so the data is passed on even if
+ *     no more data comes, e.g. the carrier holds with nothing decoded)
+ * This replaces a synchronized write to the stream per decoded byte with
+ * one write per batch. Not thread safe: one sink per receiver thread.
+ */
+public class BufferedDataSink implements IDataSink {
+    private static final Logger fLogger = LogManager.getFormatterLogger("BufferedDataSink");
+
+    public final static int DEFAULT_CAPACITY = 4096;
+    public final static long DEFAULT_MAX_DELAY_MILLIS = 100;
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private final long maxDelayNanos;
+    private int n = 0;
+    private long firstNanos;        // time the oldest buffered byte was written
+
+    /**
+     * Constructor
+     * @param out             output stream
+     * @param capacity        buffer size, bytes
+     * @param maxDelayMillis  maximum time to hold data, ms
+     */
+    public BufferedDataSink(OutputStream out, int capacity, long maxDelayMillis) {
+        this.out = out;
+        this.buf = new byte[capacity];
+        this.maxDelayNanos = maxDelayMillis * 1_000_000L;
+    }
+
+    /**
+     * Constructor (default buffer size and delay)
+     * @param out             output stream
+     */
+    public BufferedDataSink(OutputStream out) {
+        this(out, DEFAULT_CAPACITY, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        if (n == 0 && length > 0) {
+            firstNanos = System.nanoTime();
+        }
+        while (length > 0) {
+            int k = Math.min(length, buf.length - n);
+            System.arraycopy(data, offset, buf, n, k);
+            n += k;
+            offset += k;
+            length -= k;
+            if (n == buf.length) {
+                flush();
+                firstNanos = System.nanoTime();
+            }
+        }
+        poll();
+    }
+
+    public void poll() {
+        if (n > 0 && System.nanoTime() - firstNanos >= maxDelayNanos) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        try {
+            if (n > 0) {
+                out.write(buf, 0, n);
+            }
+            out.flush();
+        } catch (IOException e) {
+            fLogger.error("Failed to write decoded data: [%s]", e.getMessage());
+        }
+        n = 0;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * minimodem4j
+ * CarrierStats.java
+ */
+package minimodem;
+
+/**
+ * Statistics of a carrier, from acquisition to loss (see IFrameListener.noCarrier)
+ * The same figures NOCARRIER report shows
+ */
+public class CarrierStats {
+    private final int nFrames;
+    private final float confidence;
+    private final float amplitude;
+    private final float throughputRate;
+
+    /**
+     * Constructor
+     * @param nFrames         number of frames decoded
+     * @param confidence      average confidence
+     * @param amplitude       average amplitude
+     * @param throughputRate  actual data rate, bps
+     */
+    CarrierStats(int nFrames, float confidence, float amplitude, float throughputRate) {
+        this.nFrames = nFrames;
+        this.confidence = confidence;
+        this.amplitude = amplitude;
+        this.throughputRate = throughputRate;
+    }
+
+    public int getNFrames() {
+        return nFrames;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public float getAmplitude() {
+        return amplitude;
+    }
+
+    public float getThroughputRate() {
+        return throughputRate;
+    }
+}
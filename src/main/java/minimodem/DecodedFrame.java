@@ -0,0 +1,52 @@
+/*
+ * minimodem4j
+ * DecodedFrame.java
+ */
+package minimodem;
+
+/**
+ * Frame decoded by the receiver (see IFrameListener)
+ */
+public class DecodedFrame {
+    private final long position;
+    private final long bits;
+    private final byte[] data;
+    private final float confidence;
+    private final float amplitude;
+
+    /**
+     * Constructor
+     * @param position      sample position of the frame start
+     * @param bits          data bits (framing bits chopped off)
+     * @param data          decoded data (may be empty: Baudot shifts, sync bytes)
+     * @param confidence    demodulator confidence
+     * @param amplitude     signal amplitude
+     */
+    DecodedFrame(long position, long bits, byte[] data, float confidence, float amplitude) {
+        this.position = position;
+        this.bits = bits;
+        this.data = data;
+        this.confidence = confidence;
+        this.amplitude = amplitude;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getBits() {
+        return bits;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    public float getAmplitude() {
+        return amplitude;
+    }
+}
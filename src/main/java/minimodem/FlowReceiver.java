@@ -0,0 +1,182 @@
+/*
+ * minimodem4j
+ * FlowReceiver.java
+ */
+package minimodem;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams adapter of the receiver
+ * Subscribes to buffers of float samples and publishes receiver events
+ * (CARRIER, DATA, NOCARRIER with the carrier statistics) to one subscriber.
+ * Backpressure: a sample buffer is requested from the source only when the
+ * subscriber has outstanding demand and all events of the previous buffer
+ * have been delivered, so a slow subscriber throttles decoding and the
+ * source, and the events pending are limited to the ones of a single buffer.
+ * The samples are decoded on the thread delivering them (see StreamingReceiver).
+ * When the receiver stops (--rx-one), the source is cancelled and the
+ * subscriber completes after the events decoded so far.
+ */
+public class FlowReceiver implements Flow.Processor<float[], FrameEvent> {
+    private final StreamingReceiver receiver;
+    private final Queue<FrameEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();     // drain() serialization
+
+    private volatile Flow.Subscription upstream = null;
+    private volatile Flow.Subscriber<? super FrameEvent> subscriber = null;
+    private volatile boolean requested = false;     // a sample buffer is requested and not received yet
+    private volatile boolean done = false;          // the source has completed or failed
+    private volatile Throwable error = null;
+    private volatile Throwable requestError = null;    // the subscriber has violated the protocol
+    private volatile boolean cancelled = false;
+    private boolean terminated = false;
+
+    /**
+     * Constructor
+     * @param sampleRate  rate of the samples
+     * @param args        modem options, as on the command line for --rx mode (see StreamingReceiver)
+     * @throws IllegalArgumentException if the options are invalid or not supported
+     */
+    public FlowReceiver(int sampleRate, String... args) {
+        receiver = new StreamingReceiver(sampleRate, new IFrameListener() {
+            public void frame(DecodedFrame frame) {
+                events.add(FrameEvent.data(frame));
+            }
+
+            public void carrier(long position, float frequency) {
+                events.add(FrameEvent.carrier(position, frequency));
+            }
+
+            public void noCarrier(long position, CarrierStats stats) {
+                events.add(FrameEvent.noCarrier(position, stats));
+            }
+        }, args);
+    }
+
+    /*
+     * Publisher side
+     */
+    public void subscribe(Flow.Subscriber<? super FrameEvent> s) {
+        synchronized (this) {
+            if (subscriber != null) {
+                s.onSubscribe(new Flow.Subscription() {
+                    public void request(long n) {}
+                    public void cancel() {}
+                });
+                s.onError(new IllegalStateException("FlowReceiver supports one subscriber only"));
+                return;
+            }
+            subscriber = s;
+        }
+        s.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+                if (n <= 0) {
+                    requestError = new IllegalArgumentException("Non-positive request: " + n);
+                    cancelUpstream();
+                } else {
+                    demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                }
+                drain();
+            }
+
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+            }
+        });
+        drain();
+    }
+
+    /*
+     * Subscriber side
+     */
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    public void onNext(float[] samples) {
+        if (!cancelled && !done && !receiver.offer(samples, 0, samples.length)) {
+            // receiving has stopped (--rx-one): no more samples are needed
+            done = true;
+            cancelUpstream();
+        }
+        // cleared after decoding only: drain() shall not request the next buffer meanwhile
+        requested = false;
+        drain();
+    }
+
+    public void onError(Throwable throwable) {
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    public void onComplete() {
+        if (!done) {
+            receiver.close();
+            done = true;
+        }
+        drain();
+    }
+
+    private void cancelUpstream() {
+        Flow.Subscription s = upstream;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    /**
+     * Delivers events as far as the demand allows, then requests the next
+     * sample buffer or terminates the subscriber.
+     * Runs on one thread at a time: a concurrent (or reentrant) call makes
+     * the running one loop again.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            Flow.Subscriber<? super FrameEvent> s = subscriber;
+            if (s == null || terminated) {
+                continue;
+            }
+            if (cancelled || requestError != null) {
+                events.clear();
+                terminated = true;
+                if (!cancelled) {
+                    s.onError(requestError);
+                }
+                continue;
+            }
+            while (demand.get() > 0 && !events.isEmpty()) {
+                s.onNext(events.poll());
+                demand.decrementAndGet();
+            }
+            if (events.isEmpty()) {
+                if (done) {
+                    terminated = true;
+                    if (error != null) {
+                        s.onError(error);
+                    } else {
+                        s.onComplete();
+                    }
+                } else if (demand.get() > 0 && !requested && upstream != null) {
+                    requested = true;
+                    upstream.request(1);
+                }
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * minimodem4j
+ * FrameEvent.java
+ */
+package minimodem;
+
+/**
+ * Receiver event published by FlowReceiver
+ *   CARRIER    -- carrier acquired: position, frequency
+ *   DATA       -- frame decoded: position, frame
+ *   NOCARRIER  -- carrier lost (or the stream ended with carrier): position, stats
+ */
+public class FrameEvent {
+    public enum Type {
+        CARRIER,
+        DATA,
+        NOCARRIER
+    }
+
+    private final Type type;
+    private final long position;
+    private final float frequency;
+    private final DecodedFrame frame;
+    private final CarrierStats stats;
+
+    private FrameEvent(Type type, long position, float frequency, DecodedFrame frame, CarrierStats stats) {
+        this.type = type;
+        this.position = position;
+        this.frequency = frequency;
+        this.frame = frame;
+        this.stats = stats;
+    }
+
+    static FrameEvent carrier(long position, float frequency) {
+        return new FrameEvent(Type.CARRIER, position, frequency, null, null);
+    }
+
+    static FrameEvent data(DecodedFrame frame) {
+        return new FrameEvent(Type.DATA, frame.getPosition(), 0.0f, frame, null);
+    }
+
+    static FrameEvent noCarrier(long position, CarrierStats stats) {
+        return new FrameEvent(Type.NOCARRIER, position, 0.0f, null, stats);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return sample position of the event
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return mark frequency (CARRIER), Hz
+     */
+    public float getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return decoded frame (DATA), null for other events
+     */
+    public DecodedFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return carrier statistics (NOCARRIER), null for other events
+     */
+    public CarrierStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * minimodem4j
+ * IDataSink.java
+ */
+package minimodem;
+
+/**
+ * Receiver output interface
+ * Gets the decoded data of a channel, frame by frame.
+ * The receiver calls flush() when the carrier is lost and at the end of the stream,
+ * so an implementation may batch the data between these points. It calls poll()
+ * once per pass of its receive loop, whether data was written or not, so
+ * an implementation can pass batched data on after a time limit.
+ */
+public interface IDataSink {
+    /**
+     * Writes decoded data
+     * @param data    the buffer holding decoded data (reused by the receiver after the call)
+     * @param offset  the first byte to write
+     * @param length  the number of bytes to write
+     */
+    void write(byte[] data, int offset, int length);
+
+    /**
+     * Passes the data written so far on (carrier lost, end of stream)
+     */
+    void flush();
+
+    /**
+     * Gives the sink a chance to pass data on, no data written since the previous call required
+     */
+    void poll();
+}
@@ -0,0 +1,33 @@
+/*
+ * minimodem4j
+ * IFrameListener.java
+ */
+package minimodem;
+
+/**
+ * Receiver frame listener interface
+ * Gets decoded frames and carrier events of push receive (see StreamingReceiver)
+ * on the thread that pushes the samples. Sample positions count the samples
+ * pushed from the start of the stream.
+ */
+public interface IFrameListener {
+    /**
+     * Decoded frame
+     * @param frame  the frame
+     */
+    void frame(DecodedFrame frame);
+
+    /**
+     * Carrier acquired (reported just before the first frame)
+     * @param position   sample position of the first frame
+     * @param frequency  mark frequency, Hz
+     */
+    default void carrier(long position, float frequency) {}
+
+    /**
+     * Carrier lost or the stream ended with carrier
+     * @param position   sample position the carrier was lost at
+     * @param stats      statistics of the carrier (as reported by NOCARRIER)
+     */
+    default void noCarrier(long position, CarrierStats stats) {}
+}
@@ -1,11 +1,40 @@
 package minimodem;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
 import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 
 import minimodem.arghelpers.*;
 import minimodem.databits.*;
+import minimodem.fsk.ToneAnalyzerType;
+import minimodem.simpleaudio.OscillatorType;
 import minimodem.simpleaudio.SaAudioFile;
+import minimodem.simpleaudio.SaMappedWavFile;
+import minimodem.simpleaudio.SaReadAhead;
+import minimodem.simpleaudio.SimpleAudio;
 import minimodem.simpleaudio.SaDirection;
 
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
@@ -13,6 +42,7 @@ import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
 import static minimodem.simpleaudio.SaDirection.*;
 
 import minimodem.simpleaudio.SaToneGenerator;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -26,6 +56,12 @@ import picocli.CommandLine.Parameters;
 		description = "Minimodem Java port", usageHelpWidth = 120)
 class Minimodem implements Callable<Integer> {
 	private static final Logger fLogger = LogManager.getFormatterLogger("Minimodem");
+	/*
+	 * --segment: frames decoded before the segment start to get in sync
+	 * and after the segment end to complete the last frame
+	 */
+	private static final int SEGMENT_SYNC_FRAMES = 8;
+	private static final int SEGMENT_TAIL_FRAMES = 2;
 
 	static class OpMode {
 		@Option(names = {"-t", "--tx", "--transmit", "--write"}, required = true) 		protected boolean oTx = false;
@@ -47,6 +83,14 @@ class Minimodem implements Callable<Integer> {
 			parameterConsumer = AutoDetectCarrierParameterConsumer.class,
 			description = "Automatically detect mark and space frequencies from carrier.")
 			protected float carrierAutodetectThreshold = 0.0f;
+	@Option(names = {"--carrier-avg"}, paramLabel = "{nsegments}",
+			description = "Use averaged power spectrum for --auto-carrier: the spectra of bit-sized " +
+					"segments are accumulated into a running average which persists across buffer refills, " +
+					"and the carrier is detected once the peak stays in the same band for nsegments " +
+					"segments. While there is no peak, only one segment of every 4 is transformed, so " +
+					"silence needs 4 times fewer FFTs; it locks more reliably on weak signals.",
+			parameterConsumer = CarrierAvgParameterConsumer.class)
+			protected int carrierAvgSegments = 0;
 	@Option(names = {"-i", "--inverted"},
 			description = "Invert the mark and space frequencies (applies whether the " +
 					"frequencies are defaults, discovered by --auto-carrier, or specified manually).")
@@ -87,6 +131,23 @@ class Minimodem implements Callable<Integer> {
 			description = "Sets the space frequency. Shall be >0).",
 			parameterConsumer = SpaceFreqParameterConsumer.class)
 			protected float bfskSpaceF = 0.0f;
+	@Option(names = {"--channel"}, paramLabel = "{mark:space}",
+			description = "Decode the FSK channel with the given mark and space frequencies instead of " +
+					"--mark/--space. The option may be repeated to decode several channels of the same " +
+					"audio at once: the channels share one filterbank pass over the samples and track " +
+					"their frames independently. The data of every channel is written to the output as " +
+					"it is decoded; with several channels, the data of a channel is preceded by its " +
+					"label [ch{n}] on a new line (the line feed is not data) whenever the output changes from one channel to " +
+					"another, {n} is the channel number counting from 1 in the order of the options " +
+					"(see --channel-out to get separate outputs). (This option applies to --rx mode " +
+					"only, and can not be used with --auto-carrier).",
+			parameterConsumer = ChannelParameterConsumer.class)
+			protected List<float[]> channels = new ArrayList<>();
+	@Option(names = {"--channel-out"}, paramLabel = "{pattern}",
+			description = "Write the data of every --channel to its own file, named by the pattern " +
+					"with {n} replaced by the channel number (e.g. 'ch{n}.txt'). " +
+					"(This option applies to --rx mode with --channel only, and can not be used with --batch).")
+			protected String channelOut = null;
 	@Option(names = {"--startbits"}, paramLabel = "{n}",
 			description = "Sets the number of start bits (default is 1 for most baudmodes. Shall be <=20).",
 			parameterConsumer = NStartBitsParameterConsumer.class)
@@ -114,6 +175,29 @@ class Minimodem implements Callable<Integer> {
 					"or the size specified here.  Use --lut=0 to disable the use of " +
 					"the sine wave lookup table.  (This option applies to --tx mode only).")
 			protected int txSinTableLen = 4096;
+	@Option(names = {"--oscillator"}, paramLabel = "{table|nco|nco-linear}",
+			description = "Selects the tone oscillator: float phase computed for every sample and " +
+					"looked up in the --lut table (default), or integer phase accumulator (NCO) with " +
+					"a fixed-point phase increment per tone and a power of two table (the --lut size " +
+					"rounded up, 4 to 1048576 entries, 4096 with --lut=0), taking the nearest table entry or interpolating linearly between " +
+					"the two nearest ones. The NCO phase does not drift over long transmissions. " +
+					"(This option applies to --tx mode only).",
+			parameterConsumer = OscillatorParameterConsumer.class)
+			protected OscillatorType txOscillator = OscillatorType.TABLE;
+	@Option(names = {"--waveform-cache"},
+			description = "Render every mark/space symbol once per starting phase (rounded to 1/256 " +
+					"of a turn) and build the output of copies of the symbols. The oscillator phase " +
+					"itself is not rounded, so the error does not accumulate. " +
+					"(This option applies to --tx mode with --oscillator nco or nco-linear only).")
+			protected boolean txWaveformCache = false;
+	@Option(names = {"--shaping"}, paramLabel = "{fraction}",
+			description = "Continuous-phase FSK with shaped bit edges: the frequency moves from " +
+					"one tone to the other along a raised cosine lasting the given fraction of " +
+					"the bit (0.0 < fraction <= 1.0) instead of switching at once, which keeps " +
+					"the spectrum narrower. (This option applies to --tx mode with --oscillator " +
+					"nco or nco-linear only).",
+			parameterConsumer = ShapingParameterConsumer.class)
+			protected float txShaping = 0.0f;
 	@Option(names = {"--float-samples"},
 			description = "Generate 32-bit floating-point format audio samples, instead of the " +
 						"default 16-bit signed integer format (applies to --tx mode only; " +
@@ -142,6 +226,69 @@ class Minimodem implements Callable<Integer> {
 	@Option(names = {"--print-eot"},
 			description="Print '### EOT' to log after each transmit completes." )
 			protected boolean txPrintEot = false;
+	@Option(names = {"--analyzer"}, paramLabel = "{fft|goertzel|sdft|matched}",
+			description = "Selects the mark/space tone analyzer: full FFT of every bit (default), " +
+					"Goertzel filter computing only the mark and space bands, which is much cheaper " +
+					"for large FFT sizes, or sliding DFT which tracks the mark and space bands " +
+					"sample by sample and makes frame position scans almost free, or matched filters " +
+					"correlating every bit with the exact mark and space tones, which are not rounded " +
+					"to FFT bands and are cheap at high data rates. " +
+					"(This option applies to --rx mode only).",
+			parameterConsumer = ToneAnalyzerParameterConsumer.class)
+			protected ToneAnalyzerType toneAnalyzer = ToneAnalyzerType.FFT;
+	@Option(names = {"--rx-threads"}, paramLabel = "{n}",
+			description = "Evaluate candidate frame positions of the frame refining scan on n threads " +
+					"(default is 1, i.e.: sequential scan). (This option applies to --rx mode only).",
+			parameterConsumer = RxThreadsParameterConsumer.class)
+			protected int rxThreads = 1;
+	@Option(names = {"--read-ahead"}, paramLabel = "{n}",
+			description = "Read the input on a separate thread up to n blocks of 8192 samples ahead " +
+					"of the demodulator, so file reading and decoding overlap with demodulation " +
+					"(default is no read-ahead). (This option applies to --rx mode only).",
+			parameterConsumer = ReadAheadParameterConsumer.class)
+			protected int readAhead = 0;
+	@Option(names = {"--batch"}, paramLabel = "{dir|glob|list}",
+			description = "Decode many audio files in one run: every audio file of the directory, " +
+					"the files matching the glob pattern (e.g. 'caps/*.wav'), or the files listed " +
+					"one per line in the list file (a single audio file is decoded alone). Every " +
+					"file gets its own output file {name}.txt, or {name}.{ext}.txt if files of " +
+					"the same name differ in extension only (see --batch-out). " +
+					"(This option applies to --rx mode only, " +
+					"and can not be used with --file).")
+			protected String batch = null;
+	@Option(names = {"--batch-out"}, paramLabel = "{dir}",
+			description = "Directory to write --batch outputs to (default is the directory of " +
+					"each input file). Inputs of different directories keep their directories " +
+					"(relative to the common directory of all inputs) under this one.")
+			protected File batchOut = null;
+	@Option(names = {"--batch-threads"}, paramLabel = "{n}",
+			description = "Decode up to n --batch files at once (default is the number of processors).",
+			parameterConsumer = BatchThreadsParameterConsumer.class)
+			protected int batchThreads = Runtime.getRuntime().availableProcessors();
+	@Option(names = {"--segment"}, paramLabel = "{seconds}",
+			description = "Split a long WAV recording into segments of the given length, decode them " +
+					"in parallel (see --segment-threads) and stitch the frames back together by their " +
+					"sample positions. Segments overlap by a few frames so the receiver is in sync at " +
+					"every segment start. CARRIER / NOCARRIER are not reported in this mode. " +
+					"(This option applies to --rx mode with a WAV --file only, and can not be used with " +
+					"--auto-carrier, --channel, --channelize or --rx-one).",
+			parameterConsumer = SegmentParameterConsumer.class)
+			protected float segmentSeconds = 0.0f;
+	@Option(names = {"--segment-threads"}, paramLabel = "{n}",
+			description = "Decode up to n --segment segments at once (default is the number of processors).",
+			parameterConsumer = SegmentThreadsParameterConsumer.class)
+			protected int segmentThreads = Runtime.getRuntime().availableProcessors();
+	@Option(names = {"--channelize"},
+			description = "Shift the mark/space pair to baseband, low-pass filter and decimate the input " +
+					"to a rate just above the tone spacing before demodulation, so the per bit analysis " +
+					"works on dozens of samples instead of thousands (e.g. RTTY at 48000 Hz). " +
+					"(This option applies to --rx mode only, and can not be used with --auto-carrier " +
+					"or --channel).")
+			protected boolean channelize = false;
+	@Option(names = {"--Xpedantic"},
+			description = "Refine frame position trying every sample offset instead of " +
+					"FSK_ANALYZE_NSTEPS_FINE steps (slow unless used with --analyzer=sdft).")
+			protected boolean pedanticScan = false;
 	@Option(names = {"--Xrxnoise"}, paramLabel = "{rx-noise-factor}")			protected float rxNoiseFactor = 0.0f;
 
 	@Parameters(index = "0", paramLabel = "{baudmod}",
@@ -172,6 +319,8 @@ class Minimodem implements Callable<Integer> {
 
 
 	protected IEncodeDecode bfskDatabitsEncodeDecode = new DataBitsAscii8();    // Character encoder/decoder
+	// Decoders are stateful, every receive channel needs its own instance
+	protected Supplier<IEncodeDecode> encodeDecodeFactory = DataBitsAscii8::new;
 
 	/**
 	 * main
@@ -206,7 +355,8 @@ class Minimodem implements Callable<Integer> {
 	 */
 	protected int transmit() {
 		SaToneGenerator toneGenerator = new SaToneGenerator();
-		toneGenerator.toneInit(txSinTableLen, txAmplitude);
+		toneGenerator.toneInit(txSinTableLen, txAmplitude, txOscillator);
+		toneGenerator.toneEnableCache(txWaveformCache);
 
 		SaAudioFile saOut = new SaAudioFile();
 		if (!saOut.open(file,
@@ -228,28 +378,396 @@ class Minimodem implements Callable<Integer> {
 	}
 
 	/**
-	 * Receive data stream from audio file(device) and write it to System.out
-	 * @return 0 on success
-	 *        <0 on error
+	 * Opens audio file for receiving
+	 * WAV files of the plain formats are memory mapped, the rest is read via javax.sound
+	 * @param f  file to open
+	 * @return opened audio file, null on error
 	 */
-	protected int receive() {
+	protected SimpleAudio openRxFile(File f) {
+		if (f != null && FilenameUtils.getExtension(f.getName()).equalsIgnoreCase("wav")) {
+			SaMappedWavFile saMapped = new SaMappedWavFile();
+			if (saMapped.open(f,
+					floatSamples?PCM_FLOAT:PCM_SIGNED,
+					SA_RECEIVE,
+					sampleRate,
+					nChannels,
+					bfskMsbFirst)) {
+				return saMapped;
+			}
+		}
 		SaAudioFile saIn = new SaAudioFile();
-		if (!saIn.open(file,
+		if (!saIn.open(f,
 				floatSamples?PCM_FLOAT:PCM_SIGNED,
 				SA_RECEIVE,
 				sampleRate,
 				nChannels,
 				bfskMsbFirst)) {
+			return null;
+		}
+		return saIn;
+	}
+
+	/**
+	 * Receive data stream from audio file(device) and write it to System.out
+	 * (or decode --batch files)
+	 * @return 0 on success
+	 *        <0 on error
+	 */
+	protected int receive() {
+		if (batch != null) {
+			return receiveBatch();
+		}
+		if (segmentSeconds > 0.0f) {
+			return receiveSegmented(file, System.out, bfskDatabitsEncodeDecode);
+		}
+		return receiveFile(file, System.out, bfskDatabitsEncodeDecode);
+	}
+
+	/**
+	 * Receive data stream from audio file and write it to the stream
+	 * @param f        file to decode
+	 * @param out      stream to write decoded data to
+	 * @param decoder  character decoder (of the first channel)
+	 * @return 0 on success
+	 *        <0 on error
+	 */
+	protected int receiveFile(File f, PrintStream out, IEncodeDecode decoder) {
+		SimpleAudio saIn = openRxFile(f);
+		if (saIn == null) {
 			return -1;
 		}
 		saIn.setRxNoise(rxNoiseFactor);
+		if (readAhead > 0) {
+			saIn = new SaReadAhead(saIn, readAhead);
+		}
 
 		Receiver rx = new Receiver(saIn,this);
 
 		rx.configure(expectDataString);
-		rx.receive(bfskDatabitsEncodeDecode, quiteMode, outputPrintFilter, rxOne);
+		int ret = 0;
+		if (channels.isEmpty()) {
+			rx.receive(decoder, out, quiteMode, outputPrintFilter, rxOne);
+		} else {
+			IEncodeDecode[] decoders = new IEncodeDecode[channels.size()];
+			PrintStream[] outs = new PrintStream[channels.size()];
+			for (int k = 0; k < decoders.length && ret == 0; k++) {
+				decoders[k] = k == 0 ? decoder : encodeDecodeFactory.get();
+				if (channelOut == null) {
+					outs[k] = out;
+				} else {
+					File fOut = new File(channelOut.replace("{n}", Integer.toString(k + 1)));
+					try {
+						outs[k] = new PrintStream(new BufferedOutputStream(new FileOutputStream(fOut)));
+					} catch (IOException e) {
+						fLogger.error("Cannot write output file '%s': [%s]", fOut.getPath(), e.getMessage());
+						ret = -1;
+					}
+				}
+			}
+			if (ret == 0) {
+				rx.receiveChannels(decoders, outs, quiteMode, outputPrintFilter);
+			}
+			if (channelOut != null) {
+				for (PrintStream o : outs) {
+					if (o != null) {
+						o.close();
+					}
+				}
+			}
+		}
 		saIn.close();
-		return 0;
+		return ret;
+	}
+
+	/**
+	 * Decodes a WAV file in --segment segments in parallel
+	 * Segment k owns the frames starting in [k*L, (k+1)*L) (give or take half
+	 * a frame, the segments may find the boundary frame slightly shifted), it
+	 * is decoded from SEGMENT_SYNC_FRAMES frames before its start (to get the
+	 * receiver in sync) up to a couple of frames after its end (to complete
+	 * the last frame).
+	 * The frames are stitched in stream order: a frame found by the next
+	 * segment less than half a frame after the last frame of the previous one
+	 * is the same frame and is dropped. Then all frames
+	 * are decoded by one decoder, which is reset on every carrier acquisition,
+	 * so stateful decoders (Baudot shift) see the same stream as sequential decode.
+	 * @param f        file to decode
+	 * @param out      stream to write decoded data to
+	 * @param decoder  character decoder
+	 * @return 0 on success
+	 *        <0 on error
+	 */
+	protected int receiveSegmented(File f, PrintStream out, IEncodeDecode decoder) {
+		SaMappedWavFile probe = new SaMappedWavFile();
+		if (!probe.open(f, PCM_FLOAT, SA_RECEIVE, sampleRate, nChannels, bfskMsbFirst)) {
+			fLogger.error("--segment requires a mono PCM16 or float WAV file");
+			return -1;
+		}
+		long nFrames = probe.getNFrames();
+		Receiver rx = new Receiver(probe, this);
+		rx.configure(expectDataString);
+		long frameNSamples = rx.getFrameNSamples();
+		long segmentNSamples = Math.max((long) (segmentSeconds * probe.getRate()), frameNSamples);
+		int nSegments = (int) ((nFrames + segmentNSamples - 1) / segmentNSamples);
+		probe.close();
+
+		int nThreads = Math.max(1, Math.min(segmentThreads, nSegments));
+		fLogger.info("Decoding %d segments of %d samples on %d threads", nSegments, segmentNSamples, nThreads);
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<List<RawFrame>>> results = new ArrayList<>();
+		for (int k = 0; k < nSegments; k++) {
+			long from = k * segmentNSamples;
+			long to = Math.min(from + segmentNSamples, nFrames);
+			boolean last = k == nSegments - 1;
+			results.add(pool.submit(() -> receiveSegment(f, from, to, last, frameNSamples)));
+		}
+		List<RawFrame> frames = new ArrayList<>();
+		int ret = 0;
+		for (Future<List<RawFrame>> r : results) {
+			try {
+				List<RawFrame> segment = r.get();
+				if (segment == null) {
+					ret = -1;
+					continue;
+				}
+				long minStart = frames.isEmpty() ? Long.MIN_VALUE :
+						frames.get(frames.size() - 1).start + frameNSamples / 2;
+				for (RawFrame frame : segment) {
+					if (frame.start >= minStart) {
+						frames.add(frame);
+					}
+				}
+			} catch (Exception e) {
+				fLogger.error("Segment decoding failed: [%s]", e.getMessage());
+				ret = -1;
+			}
+		}
+		pool.shutdown();
+		rx.decodeFrames(frames, decoder, out, outputPrintFilter);
+		out.flush();
+		return ret;
+	}
+
+	/**
+	 * Collects the frames of one --segment segment
+	 * @param f              file to decode
+	 * @param from           the first sample of the segment
+	 * @param to             the sample after the last one of the segment
+	 * @param last           the segment is the last one (owns the tail)
+	 * @param frameNSamples  frame length
+	 * @return frames starting within the segment (+/- half a frame), null on error
+	 */
+	private List<RawFrame> receiveSegment(File f, long from, long to, boolean last, long frameNSamples) {
+		SaMappedWavFile saIn = new SaMappedWavFile();
+		if (!saIn.open(f, PCM_FLOAT, SA_RECEIVE, sampleRate, nChannels, bfskMsbFirst)) {
+			return null;
+		}
+		long start = Math.max(0, from - SEGMENT_SYNC_FRAMES * frameNSamples);
+		saIn.setRange(start, to + SEGMENT_TAIL_FRAMES * frameNSamples - start);
+		saIn.setRxNoise(rxNoiseFactor);
+		Receiver rx = new Receiver(saIn, this);
+		rx.configure(expectDataString);
+		List<RawFrame> frames = rx.receiveFrames(start);
+		saIn.close();
+		long margin = frameNSamples / 2;
+		frames.removeIf(frame -> frame.start < from - margin || (!last && frame.start >= to + margin));
+		return frames;
+	}
+
+	/**
+	 * Decodes --batch files on the pool of --batch-threads workers
+	 * Every file gets its own receiver, decoder and output file, the modem
+	 * configuration is shared (read only)
+	 * @return 0 on success
+	 *        <0 if any file failed
+	 */
+	protected int receiveBatch() {
+		List<File> files = listBatchFiles(batch);
+		if (files == null) {
+			return -1;
+		}
+		if (files.isEmpty()) {
+			fLogger.error("No files to decode in '%s'", batch);
+			return -1;
+		}
+		Map<File, File> outputs = batchOutputFiles(files, batchOut);
+		if (outputs == null) {
+			return -1;
+		}
+		int nThreads = Math.min(batchThreads, outputs.size());
+		fLogger.info("Decoding %d files on %d threads", outputs.size(), nThreads);
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (Map.Entry<File, File> e : outputs.entrySet()) {
+			results.add(pool.submit(() -> receiveBatchFile(e.getKey(), e.getValue())));
+		}
+		int ret = 0;
+		for (Future<Integer> r : results) {
+			try {
+				if (r.get() != 0) {
+					ret = -1;
+				}
+			} catch (Exception e) {
+				fLogger.error("Batch decoding failed: [%s]", e.getMessage());
+				ret = -1;
+			}
+		}
+		pool.shutdown();
+		return ret;
+	}
+
+	/**
+	 * Maps --batch files to their output files
+	 * The output of {dir}/{name}.{ext} is {name}.txt, or {name}.{ext}.txt if
+	 * another input of the directory has the same {name}. The outputs are written
+	 * next to the inputs or, with --batch-out, to the same relative directories
+	 * (relative to the common directory of all inputs) under --batch-out, so
+	 * inputs of different directories never share an output.
+	 * The same input listed twice is decoded once.
+	 * @param files   input files
+	 * @param outDir  --batch-out directory, null to write next to the inputs
+	 * @return input to output map (in the order of the inputs), null on error
+	 */
+	protected static Map<File, File> batchOutputFiles(List<File> files, File outDir) {
+		List<File> inputs = new ArrayList<>();
+		Set<File> seen = new HashSet<>();
+		for (File f : files) {
+			File abs = f.getAbsoluteFile().toPath().normalize().toFile();
+			if (seen.add(abs)) {
+				inputs.add(abs);
+			} else {
+				fLogger.warn("'%s' is listed more than once, decoding it once", f.getPath());
+			}
+		}
+		Path common = null;
+		for (File f : inputs) {
+			Path dir = f.getParentFile().toPath();
+			if (common == null) {
+				common = dir;
+			} else {
+				while (!dir.startsWith(common)) {
+					common = common.getParent();
+				}
+			}
+		}
+		Map<File, Integer> nameCount = new HashMap<>();
+		for (File f : inputs) {
+			nameCount.merge(new File(f.getParentFile(), FilenameUtils.getBaseName(f.getName())), 1, Integer::sum);
+		}
+		Map<File, File> outputs = new LinkedHashMap<>();
+		Map<File, File> owners = new HashMap<>();
+		for (File f : inputs) {
+			File dir = outDir == null ? f.getParentFile() :
+					new File(outDir, common.relativize(f.getParentFile().toPath()).toString());
+			String base = FilenameUtils.getBaseName(f.getName());
+			String name = nameCount.get(new File(f.getParentFile(), base)) > 1 ? f.getName() : base;
+			File fOut = new File(dir, name + ".txt");
+			File owner = owners.putIfAbsent(fOut, f);
+			if (owner != null) {
+				fLogger.error("'%s' and '%s' would both be decoded to '%s'",
+						owner.getPath(), f.getPath(), fOut.getPath());
+				return null;
+			}
+			outputs.put(f, fOut);
+		}
+		return outputs;
+	}
+
+	/**
+	 * Decodes one --batch file
+	 * @param f     file to decode
+	 * @param fOut  file to write decoded data to
+	 * @return 0 on success
+	 *        <0 on error
+	 */
+	private int receiveBatchFile(File f, File fOut) {
+		File dir = fOut.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			fLogger.error("Cannot create output directory '%s'", dir.getPath());
+			return -1;
+		}
+		fLogger.info("### FILE %s -> %s", f.getPath(), fOut.getPath());
+		try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(fOut)))) {
+			int ret = receiveFile(f, out, encodeDecodeFactory.get());
+			if (ret != 0) {
+				fLogger.error("Failed to decode '%s'", f.getPath());
+			}
+			return ret;
+		} catch (IOException e) {
+			fLogger.error("Cannot write output file '%s': [%s]", fOut.getPath(), e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * @return lower case extensions of the audio file types supported
+	 */
+	private static Set<String> audioExtensions() {
+		Set<String> exts = new HashSet<>();
+		for (AudioFileFormat.Type t : AudioSystem.getAudioFileTypes()) {
+			exts.add(t.getExtension().toLowerCase());
+		}
+		return exts;
+	}
+
+	/**
+	 * Lists --batch files
+	 * @param spec  directory (its audio files), audio file (just itself), list file
+	 *              (one file per line, empty lines and lines starting with '#' are
+	 *              skipped) or glob pattern
+	 * @return sorted list of files, null on error
+	 */
+	protected static List<File> listBatchFiles(String spec) {
+		List<File> files = new ArrayList<>();
+		Set<String> exts = audioExtensions();
+		try {
+			Path path = Paths.get(spec);
+			if (Files.isRegularFile(path) && exts.contains(FilenameUtils.getExtension(spec).toLowerCase())) {
+				files.add(path.toFile());
+				return files;
+			}
+			if (Files.isRegularFile(path)) {
+				for (String line : Files.readAllLines(path)) {
+					line = line.trim();
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						files.add(new File(line));
+					}
+				}
+				return files;
+			}
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> s = Files.list(path)) {
+					s.filter(Files::isRegularFile)
+							.filter(p -> exts.contains(FilenameUtils.getExtension(p.toString()).toLowerCase()))
+							.forEach(p -> files.add(p.toFile()));
+				}
+			} else {
+				// walk from the longest directory prefix without glob characters
+				Path prefix = path.getRoot();
+				for (Path part : path) {
+					if (part.toString().matches(".*[*?\\[{].*")) {
+						break;
+					}
+					prefix = prefix == null ? part : prefix.resolve(part);
+				}
+				final boolean relative = prefix == null;
+				final Path base = relative ? Paths.get(".") : prefix;
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+				if (Files.isDirectory(base)) {
+					try (Stream<Path> s = Files.walk(base)) {
+						s.filter(Files::isRegularFile)
+								.map(p -> relative ? base.relativize(p) : p)
+								.filter(matcher::matches)
+								.forEach(p -> files.add(p.toFile()));
+					}
+				}
+			}
+		} catch (IOException | InvalidPathException e) {
+			fLogger.error("Cannot list files of '%s': [%s]", spec, e.getMessage());
+			return null;
+		}
+		files.sort(null);
+		return files;
 	}
 
 	/**
@@ -271,7 +789,7 @@ class Minimodem implements Callable<Integer> {
 				bfskNDataBits = 7;
 			} else if (dataBits.baudot5N1) {            // Baudot 5-N-1
 				bfskNDataBits = 5;
-				bfskDatabitsEncodeDecode = new DataBitsBaudot(baudotUSOS);
+				encodeDecodeFactory = () -> new DataBitsBaudot(baudotUSOS);
 			}
 		}
 		if(modemMode.equalsIgnoreCase("rtty")) {
@@ -306,7 +824,7 @@ class Minimodem implements Callable<Integer> {
 			}
 			bfskDataRate = 1200f;
 			bfskNDataBits = 8;
-			bfskDatabitsEncodeDecode = new DataBitsCallerId();
+			encodeDecodeFactory = () -> new DataBitsCallerId();
 		} else if(modemMode.toLowerCase().startsWith("uic")) {
 			if(txMode.equals(SA_RECEIVE)) {
 				fLogger.fatal ("uic-751-3 --tx mode is not supported.");
@@ -323,9 +841,9 @@ class Minimodem implements Callable<Integer> {
 			expectNBits = 47;
 
 			if(modemMode.equalsIgnoreCase("uic-train")) {
-				bfskDatabitsEncodeDecode = new DataBitsUicGround2Train();
+				encodeDecodeFactory = () -> new DataBitsUicGround2Train();
 			} else if (modemMode.equalsIgnoreCase("uic-ground")) {
-				bfskDatabitsEncodeDecode = new DataBitsUicTrain2Ground();
+				encodeDecodeFactory = () -> new DataBitsUicTrain2Ground();
 			} else{
 				bfskDataRate = 0.0f;
 			}
@@ -348,7 +866,7 @@ class Minimodem implements Callable<Integer> {
 		}
 
 		if (outputModeBinary || outputModeRawNBits!=0) {
-			bfskDatabitsEncodeDecode = new DataBitsBinary();
+			encodeDecodeFactory = () -> new DataBitsBinary();
 		}
 		if (outputModeRawNBits!=0) {
 			bfskNStartBits = 0;
@@ -436,6 +954,52 @@ class Minimodem implements Callable<Integer> {
 			fskConfidenceSearchLimit = fskConfidenceThreshold;
 		}
 
+		if(segmentSeconds > 0.0f && (txMode.equals(SA_TRANSMIT) || file == null || batch != null
+				|| carrierAutodetectThreshold > 0.0f || !channels.isEmpty() || channelize || rxOne)) {
+			fLogger.fatal("--segment can be used in --rx mode with --file only, and can not be used with " +
+					"--batch, --auto-carrier, --channel, --channelize or --rx-one.");
+			return 1;
+		}
+		if(txWaveformCache && txOscillator == OscillatorType.TABLE) {
+			fLogger.fatal("--waveform-cache requires --oscillator nco or nco-linear.");
+			return 1;
+		}
+		if(txShaping > 0.0f && txOscillator == OscillatorType.TABLE) {
+			fLogger.fatal("--shaping requires --oscillator nco or nco-linear.");
+			return 1;
+		}
+		if(batch != null && (txMode.equals(SA_TRANSMIT) || file != null)) {
+			fLogger.fatal("--batch can be used in --rx mode only, and can not be used with --file.");
+			return 1;
+		}
+		if(channelize && txMode.equals(SA_RECEIVE)
+				&& (carrierAutodetectThreshold > 0.0f || !channels.isEmpty())) {
+			fLogger.fatal("--channelize can not be used with --auto-carrier or --channel.");
+			return 1;
+		}
+		if(channelOut != null && (txMode.equals(SA_TRANSMIT) || channels.isEmpty() || batch != null)) {
+			fLogger.fatal("--channel-out can be used in --rx mode with --channel only, and can not be used with --batch.");
+			return 1;
+		}
+		if(channelOut != null && channels.size() > 1 && !channelOut.contains("{n}")) {
+			fLogger.fatal("--channel-out pattern shall contain {n} to tell the channels apart.");
+			return 1;
+		}
+		if(!channels.isEmpty() && txMode.equals(SA_RECEIVE)) {
+			if(carrierAutodetectThreshold > 0.0f) {
+				fLogger.fatal("--channel can not be used with --auto-carrier.");
+				return 1;
+			}
+			if(bfskInvertedFreqs) {
+				for(float[] tones : channels) {
+					float t = tones[0];
+					tones[0] = tones[1];
+					tones[1] = t;
+				}
+			}
+		}
+
+		bfskDatabitsEncodeDecode = encodeDecodeFactory.get();
 		return 0;
 	}
 
@@ -469,6 +1033,10 @@ class Minimodem implements Callable<Integer> {
 		return bfskSyncByte;
 	}
 
+	public byte[] getExpectDataString() {
+		return expectDataString;
+	}
+
 	public float getBfskMarkF() {
 		return bfskMarkF;
 	}
@@ -485,6 +1053,14 @@ class Minimodem implements Callable<Integer> {
 		return carrierAutodetectThreshold;
 	}
 
+	public int getCarrierAvgSegments() {
+		return carrierAvgSegments;
+	}
+
+	public List<float[]> getChannels() {
+		return channels;
+	}
+
 	public int getAutodetectShift() {
 		return autodetectShift;
 	}
@@ -505,6 +1081,22 @@ class Minimodem implements Callable<Integer> {
 		return bfskMsbFirst;
 	}
 
+	public ToneAnalyzerType getToneAnalyzer() {
+		return toneAnalyzer;
+	}
+
+	public int getRxThreads() {
+		return rxThreads;
+	}
+
+	public boolean isChannelize() {
+		return channelize;
+	}
+
+	public boolean isPedanticScan() {
+		return pedanticScan;
+	}
+
 	public int getBfskDoTxSyncBytes() {
 		return bfskDoTxSyncBytes;
 	}
@@ -513,4 +1105,8 @@ class Minimodem implements Callable<Integer> {
 		return txPrintEot;
 	}
 
+	public float getTxShaping() {
+		return txShaping;
+	}
+
 }
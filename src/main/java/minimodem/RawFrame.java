@@ -0,0 +1,28 @@
+/*
+ * minimodem4j
+ * RawFrame.java
+ */
+package minimodem;
+
+/**
+ * Frame found by the receiver, before character decoding
+ * Collected by segmented decode (see Receiver.receiveFrames) to be stitched
+ * and decoded in stream order
+ */
+class RawFrame {
+    final long start;
+    final long bits;
+    final boolean carrierStart;
+
+    /**
+     * Constructor
+     * @param start         absolute sample position of the frame start
+     * @param bits          data bits (framing bits chopped off)
+     * @param carrierStart  the frame is the first one after carrier acquisition
+     */
+    RawFrame(long start, long bits, boolean carrierStart) {
+        this.start = start;
+        this.bits = bits;
+        this.carrierStart = carrierStart;
+    }
+}
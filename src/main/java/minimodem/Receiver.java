@@ -7,13 +7,25 @@
 package minimodem;
 
 import minimodem.databits.IEncodeDecode;
+import minimodem.fsk.CarrierDetector;
+import minimodem.fsk.Channelizer;
+import minimodem.fsk.Filterbank;
 import minimodem.fsk.Fsk;
+import minimodem.fsk.FrameResult;
+import minimodem.fsk.ToneAnalyzerType;
 import minimodem.simpleaudio.SimpleAudio;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.lang.Math.ceil;
 import static java.nio.ByteOrder.nativeOrder;
@@ -23,6 +35,7 @@ import static minimodem.databits.BitOps.bitWindow;
 public class Receiver {
      private static final Logger fLogger = LogManager.getFormatterLogger("Receiver");
      private final static int SAMPLE_BUF_DIVISOR = 12;
+     private final static int SAMPLE_STORE_FACTOR = 4;
     /*
      * FSK_ANALYZE_NSTEPS Try 3 frame positions across the try_max_nsamples
      * range.  Using a larger nsteps allows for more accurate tracking of
@@ -55,6 +68,14 @@ public class Receiver {
      */
      private final static float FRAME_OVERSCAN = 0.5f;
 
+    /*
+     * Averaged carrier detection (--carrier-avg) transforms one bit-sized
+     * segment every CARRIER_AVG_HOP_SEGMENTS segments while there is no peak
+     * above the threshold, so the silence costs that many times fewer FFTs.
+     * A peak makes it go back to the first segment skipped and scan contiguously.
+     */
+     private final static int CARRIER_AVG_HOP_SEGMENTS = 4;
+
      private final SimpleAudio rxSaIn;
      private final int sampleRate;
      private final float bfskDataRate;
@@ -74,33 +95,62 @@ public class Receiver {
      private final float fskConfidenceSearchLimit;
      private final float fskConfidenceThreshold;
      private final boolean bfskMsbFirst;
+     private final ToneAnalyzerType toneAnalyzer;
+     private final boolean pedanticScan;
+     private final int rxThreads;
+     private final int carrierAvgSegments;
+     private final List<float[]> channelTones;
+     private final Channelizer channelizer;
+     private final float carrierFreqShift;
 
      private float nSamplesPerBit;
      private int expectNBits;
      protected int nSamplesOverscan;
      private int frameNSamples;
+     private int expectNSamples;
      protected byte[] expectDataString;
      private byte[] expectSyncString;
      private Fsk fskp;
+     private CarrierDetector carrierDetector;
+     private int carrierScanSkip = 0;           // samples to skip before the next carrier detector segment
+     private boolean carrierScanContiguous = false;     // peak seen: carrier detector segments are not skipped
+     private Filterbank filterbank;
+     private Fsk[] channelFsks;
 
    /*
     *    Sample buffer
-    *        samplebufSize samples of type float  (viewed as sampleBuf)
+    *        sliding window of samplebufSize samples of type float (viewed as sampleBuf)
+    *        over the store of SAMPLE_STORE_FACTOR * samplebufSize samples
+    *                              of type float  (viewed as sampleStore)
     *                              or ByteBuffer  (viewed as sampleBufRaw)
+    *        sampleBase - position of the window in the store
     *        advance - current first scanning position in sampleBuf
     *        sampleNValid - remaining number of valid, non scanned float samples
+    *    Moving the window is a pointer bump, the valid samples are copied back
+    *    to the start of the store only when the window reaches its end.
     */
     private int samplebufSize;
     protected int advance;
     protected int samplesNValid;
+    private int sampleBase;
+    private long streamPos;             // absolute sample position of sampleBuf[0]
     private ByteBuffer sampleBufRaw;
+    private FloatBuffer sampleStore;
     protected FloatBuffer sampleBuf;
+    private ByteBuffer inputBufRaw;         // input rate samples for channelizer
+    private FloatBuffer inputBuf;
+    private int carrierBand;                // autodetected carrier band, <0 if not detected yet
 
    /*
-    *    Output buffer
+    *    Push receive state (see startPush)
+    */
+    private Channel pushChannel = null;
+    private boolean pushStopped;
+
+   /*
+    *    Output buffer size (per channel)
     */
     private final static int DATAOUT_SIZE = 4_096;
-    private final byte[] dataoutbuf = new byte[DATAOUT_SIZE];
 
 
     /**
@@ -110,8 +160,26 @@ public class Receiver {
      */
      public Receiver(SimpleAudio saIn,
                      Minimodem modem) {
+        this(saIn, saIn.getRate(), modem);
+     }
+
+    /**
+     * Constructor of the receiver fed with push() (no input device)
+     * @param inputRate  sample rate of the samples to be pushed
+     * @param modem      Minimodem instance to inherit configuration from
+     */
+     Receiver(int inputRate, Minimodem modem) {
+        this(null, inputRate, modem);
+     }
+
+    /**
+     * Constructor
+     * @param saIn       Input device (null for push receive)
+     * @param inputRate  Input sample rate
+     * @param modem      Minimodem instance to inherit configuration from
+     */
+     private Receiver(SimpleAudio saIn, int inputRate, Minimodem modem) {
         rxSaIn = saIn;
-        sampleRate = saIn.getRate();
         bfskDataRate = modem.getBfskDataRate();
         bfskNStartBits = modem.getBfskNStartBits();
         bfskNStopBits = modem.getBfskNStopBits();
@@ -120,8 +188,31 @@ public class Receiver {
         invertStartStop = modem.isInvertStartStop();
         bfskDoRxSync = modem.isBfskDoRxSync();
         bfskSyncByte = modem.getBfskSyncByte();
-        bfskMarkF =  modem.getBfskMarkF();
-        bfskSpaceF = modem.getBfskSpaceF();
+        /*
+         * With channelizer the receiver runs at the decimated rate, and the
+         * mark/space tones are the ones channelizer moves the pair to
+         */
+        Channelizer c = null;
+        if (modem.isChannelize()) {
+            c = new Channelizer(inputRate, modem.getBfskMarkF(), modem.getBfskSpaceF(),
+                    modem.getBandWidth(), bfskDataRate);
+            if (c.getDecimation() == 1) {
+                fLogger.warn("Sample rate %d is too low to channelize, channelizer is not used", inputRate);
+                c = null;
+            }
+        }
+        channelizer = c;
+        if (channelizer != null) {
+            sampleRate = channelizer.getOutputRate();
+            bfskMarkF = channelizer.getMarkF();
+            bfskSpaceF = channelizer.getSpaceF();
+            carrierFreqShift = modem.getBfskMarkF() - bfskMarkF;
+        } else {
+            sampleRate = inputRate;
+            bfskMarkF =  modem.getBfskMarkF();
+            bfskSpaceF = modem.getBfskSpaceF();
+            carrierFreqShift = 0.0f;
+        }
         bandWidth = modem.getBandWidth();
         carrierAutodetectThreshold = modem.getCarrierAutodetectThreshold();
         autodetectShift = modem.getAutodetectShift();
@@ -129,6 +220,11 @@ public class Receiver {
         fskConfidenceSearchLimit = modem.getFskConfidenceSearchLimit();
         fskConfidenceThreshold = modem.getFskConfidenceThreshold();
         bfskMsbFirst = modem.isBfskMsbFirst();
+        toneAnalyzer = modem.getToneAnalyzer();
+        pedanticScan = modem.isPedanticScan();
+        rxThreads = modem.getRxThreads();
+        carrierAvgSegments = modem.getCarrierAvgSegments();
+        channelTones = modem.getChannels();
      }
 
     /**
@@ -140,7 +236,7 @@ public class Receiver {
      */
     public void configure(byte[] expctDataString) {
         nSamplesPerBit = sampleRate / bfskDataRate;  // The input sample chunk rate
-        fskp = new Fsk(sampleRate, bfskMarkF, bfskSpaceF, bandWidth);
+        fskp = new Fsk(sampleRate, bfskMarkF, bfskSpaceF, bandWidth, toneAnalyzer);
 
          /*
          * Prepare the input sample buffer.  For 8-bit frames with prev/start/stop
@@ -162,9 +258,34 @@ public class Receiver {
             samplebufSize = sampleRate / SAMPLE_BUF_DIVISOR;
         }
         fLogger.debug("Creating sample buffer with samplebufSize=%d", samplebufSize);
-        sampleBufRaw = ByteBuffer.allocate(samplebufSize * Float.BYTES);
+        sampleBufRaw = ByteBuffer.allocate(SAMPLE_STORE_FACTOR * samplebufSize * Float.BYTES);
         sampleBufRaw.order(nativeOrder());           // Here it shall be native order. Lsb/Msb is handled in the code.
-        sampleBuf = sampleBufRaw.asFloatBuffer();
+        sampleStore = sampleBufRaw.asFloatBuffer();
+        setSampleBase(0);
+        if (channelizer != null) {
+            inputBufRaw = ByteBuffer.allocate(samplebufSize / 2 * channelizer.getDecimation() * Float.BYTES);
+            inputBufRaw.order(nativeOrder());
+            inputBuf = inputBufRaw.asFloatBuffer();
+        }
+        fskp.fskEnableCache(samplebufSize);
+
+        carrierDetector = null;
+        if (carrierAutodetectThreshold > 0.0f && carrierAvgSegments > 0) {
+            carrierDetector = new CarrierDetector(fskp.getFftSize(), carrierAutodetectThreshold, carrierAvgSegments);
+        }
+
+        /*
+         * Multi-channel receive: the channel demodulators share one filterbank
+         */
+        filterbank = null;
+        channelFsks = new Fsk[channelTones.size()];
+        if (channelFsks.length > 0) {
+            filterbank = new Filterbank(fskp.getFftSize());
+            for (int k = 0; k < channelFsks.length; k++) {
+                float[] tones = channelTones.get(k);
+                channelFsks[k] = new Fsk(sampleRate, tones[0], tones[1], bandWidth, filterbank);
+            }
+        }
 
         // Ensure that we overscan at least a single sample
         nSamplesOverscan = (int)(nSamplesPerBit * FRAME_OVERSCAN + 0.5f);
@@ -182,6 +303,7 @@ public class Receiver {
             expectDataString = expctDataString;
             expectNBits = expctDataString.length;
         }
+        expectNSamples = (int) (nSamplesPerBit * expectNBits);
         String dbgOut = byteArray2String(expectDataString);
         fLogger.debug("expectDataString = '%s' (%d)", dbgOut, dbgOut.length()-2);
 
@@ -195,39 +317,394 @@ public class Receiver {
 
     }
 
+    /**
+     * Receives the sample stream and decodes the FSK channel
+     * @param decoder               character decoder
+     * @param quietMode             do not report CARRIER / NOCARRIER
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @param rxOne                 quit after the first carrier/no-carrier event
+     * @return  the last refillBuf result (0 on EOF, <0 on error)
+     */
     public int receive(IEncodeDecode decoder, boolean quietMode, boolean outputPrintFilter, boolean rxOne) {
+        return receive(decoder, System.out, quietMode, outputPrintFilter, rxOne);
+    }
+
+    /**
+     * Receives the sample stream and decodes the FSK channel
+     * @param decoder               character decoder
+     * @param out                   stream to write decoded data to
+     * @param quietMode             do not report CARRIER / NOCARRIER
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @param rxOne                 quit after the first carrier/no-carrier event
+     * @return  the last refillBuf result (0 on EOF, <0 on error)
+     */
+    public int receive(IEncodeDecode decoder, PrintStream out,
+                       boolean quietMode, boolean outputPrintFilter, boolean rxOne) {
+        return receive(decoder, new BufferedDataSink(out), quietMode, outputPrintFilter, rxOne);
+    }
+
+    /**
+     * Receives the sample stream and decodes the FSK channel
+     * @param decoder               character decoder
+     * @param sink                  output of decoded data
+     * @param quietMode             do not report CARRIER / NOCARRIER
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @param rxOne                 quit after the first carrier/no-carrier event
+     * @return  the last refillBuf result (0 on EOF, <0 on error)
+     */
+    public int receive(IEncodeDecode decoder, IDataSink sink,
+                       boolean quietMode, boolean outputPrintFilter, boolean rxOne) {
+        return receive(new Channel(fskp, decoder, sink, quietMode, outputPrintFilter, rxOne), 0);
+    }
+
+    /**
+     * Receives the sample stream and collects the frames without decoding them
+     * (segmented decode: see decodeFrames)
+     * @param streamStart   absolute sample position of the first sample of the stream
+     * @return  frames found, in stream order
+     */
+    List<RawFrame> receiveFrames(long streamStart) {
+        List<RawFrame> frames = new ArrayList<>();
+        Channel channel = new Channel(fskp, null, null, true, false, false);
+        channel.listener = new IFrameListener() {
+            private boolean carrierStart = false;
+
+            public void carrier(long position, float frequency) {
+                carrierStart = true;
+            }
+
+            public void frame(DecodedFrame frame) {
+                frames.add(new RawFrame(frame.getPosition(), frame.getBits(), carrierStart));
+                carrierStart = false;
+            }
+        };
+        receive(channel, streamStart);
+        return frames;
+    }
+
+    /**
+     * Decodes collected frames
+     * @param frames                frames in stream order
+     * @param decoder               character decoder
+     * @param out                   stream to write decoded data to
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     */
+    void decodeFrames(List<RawFrame> frames, IEncodeDecode decoder, PrintStream out, boolean outputPrintFilter) {
+        IDataSink sink = new BufferedDataSink(out);
+        byte[] dataoutbuf = new byte[DATAOUT_SIZE];
+        for (RawFrame frame : frames) {
+            if (frame.carrierStart) {
+                decoder.decode(null, 0, 0, 0); // reset the frame processor
+            }
+            writeFrame(frame.bits, decoder, dataoutbuf, sink, outputPrintFilter);
+        }
+        sink.flush();
+    }
+
+    /**
+     * Receives the sample stream with the channel
+     * @param channel       channel to decode
+     * @param streamStart   absolute sample position of the first sample of the stream
+     * @return  the last refillBuf result (0 on EOF, <0 on error)
+     */
+    private int receive(Channel channel, long streamStart) {
 
         int ret = 0;
 
-        boolean carrier = false;
-        float confidenceTotal = 0.0f;
-        float amplitudeTotal = 0.0f;
-        int nFramesDecoded = 0;
-        int carrierNSamples = 0;
+        resetStream(streamStart);
 
-        int noconfidence = 0;
+        ForkJoinPool pool = null;
+        if (rxThreads > 1) {
+            pool = new ForkJoinPool(rxThreads);
+            fskp.fskEnableParallel(pool);
+        }
 
+        while ((ret = refillBuf()) > 0 || samplesNValid > 0) {
+            if (!receiveStep(channel)) {
+                break;
+            }
+            channel.poll();
+        }
+        channel.finish();
+        if (pool != null) {
+            fskp.fskEnableParallel(null);
+            pool.shutdown();
+        }
+        return ret;
+    }
+
+    /**
+     * Resets the sample buffer and the demodulator state for a new stream
+     * @param streamStart   absolute sample position of the first sample of the stream
+     */
+    private void resetStream(long streamStart) {
         advance = 0;
         samplesNValid = 0;
+        streamPos = streamStart;
+        carrierBand = -1;
+        setSampleBase(0);
+        fskp.fskSampleBufReset();
+        if (carrierDetector != null) {
+            carrierDetector.reset();
+        }
+        carrierScanSkip = 0;
+        carrierScanContiguous = false;
+        if (channelizer != null) {
+            channelizer.reset();
+        }
+    }
+
+    /**
+     * One pass of the receive loop over the sample buffer: autodetects the carrier
+     * (if requested and not detected yet) or scans the channel for the next frame
+     * @param channel   channel to decode
+     * @return  false if receiving shall stop (not enough samples for a frame; rxOne: advance < 0)
+     */
+    private boolean receiveStep(Channel channel) {
+        if (carrierAutodetectThreshold > 0.0f && carrierBand < 0) {
+            carrierBand = carrierAutodetect();
+            if (carrierBand < 0) return true;
+        }
+        if ( samplesNValid < expectNSamples ) {
+            return false;
+        }
+        advance = channel.step(0);
+        return advance >= 0;
+    }
+
+    /**
+     * Starts push receive: the caller feeds the samples by chunks with push()
+     * instead of the receiver reading them from the input device, and gets
+     * decoded frames through the listener, on the calling thread.
+     * The receive loop runs exactly as with an input device: a frame is scanned
+     * only when there is at least half of the sample buffer of samples ahead,
+     * so the result does not depend on the chunk sizes.
+     * @param decoder               character decoder
+     * @param listener              receiver of decoded frames and carrier events
+     * @param quietMode             do not report CARRIER / NOCARRIER to the log
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @param rxOne                 stop after the first carrier/no-carrier event
+     */
+    void startPush(IEncodeDecode decoder, IFrameListener listener,
+                   boolean quietMode, boolean outputPrintFilter, boolean rxOne) {
+        resetStream(0);
+        pushChannel = new Channel(fskp, decoder, null, quietMode, outputPrintFilter, rxOne);
+        pushChannel.listener = listener;
+        pushStopped = false;
+    }
+
+    /**
+     * Feeds samples to push receive
+     * The samples are copied to the sample buffer (through the channelizer, if any)
+     * and scanned as far as there are enough of them, the rest is kept for the next call.
+     * @param in    samples at the input rate
+     * @param pIn   position of the first sample
+     * @param nIn   number of samples
+     * @return  false if receiving has stopped (rxOne), the samples are ignored then
+     */
+    boolean push(FloatBuffer in, int pIn, int nIn) {
+        while (!pushStopped) {
+            int shift = moveSampleBuf();
+            int k = appendSamples(in, pIn, nIn);
+            pIn += k;
+            nIn -= k;
+            sampleBufUpdated(shift);
+            if (samplesNValid < samplebufSize / 2) {
+                break;      // wait for more samples
+            }
+            if (!receiveStep(pushChannel)) {
+                stopPush();
+            }
+        }
+        return !pushStopped;
+    }
+
+    /**
+     * Ends push receive: scans the samples left, reports "no carrier" if the
+     * carrier is still there
+     */
+    void endPush() {
+        while (!pushStopped) {
+            sampleBufUpdated(moveSampleBuf());
+            if (samplesNValid == 0 || !receiveStep(pushChannel)) {
+                stopPush();
+            }
+        }
+    }
+
+    private void stopPush() {
+        advance = 0;
+        pushStopped = true;
+        pushChannel.finish();
+    }
+
+    /**
+     * Appends pushed samples to the sample buffer
+     * @param in    samples at the input rate
+     * @param pIn   position of the first sample
+     * @param nIn   number of samples
+     * @return  number of input samples consumed (as many as the sample buffer can take)
+     */
+    private int appendSamples(FloatBuffer in, int pIn, int nIn) {
+        int room = samplebufSize - samplesNValid;
+        if (channelizer != null) {
+            int k = Math.min(nIn, Math.max(0, room - 1) * channelizer.getDecimation());
+            samplesNValid += channelizer.process(in, pIn, k, sampleBuf, samplesNValid);
+            return k;
+        }
+        int k = Math.min(nIn, room);
+        FloatBuffer src = in.duplicate();
+        src.position(pIn);
+        src.limit(pIn + k);
+        FloatBuffer dst = sampleBuf.duplicate();
+        dst.position(samplesNValid);
+        dst.put(src);
+        samplesNValid += k;
+        return k;
+    }
+
+    /**
+     * Converts demodulator sample position to input sample position
+     * @param p  sample position at the demodulator rate
+     * @return   sample position at the input rate
+     */
+    private long inputPosition(long p) {
+        return channelizer != null ? p * channelizer.getDecimation() : p;
+    }
 
-        int expectNSamples = (int) (nSamplesPerBit * expectNBits);
-        float trackAmplitude = 0.0f;
-        float peakConfidence = 0.0f;
-        int carrierBand = -1;
+    /**
+     * Receives the sample stream and decodes all configured FSK channels
+     * Every channel tracks its own frames at its own position in the shared
+     * sample buffer, the buffer is advanced as far as the slowest channel allows.
+     * While more samples are coming, a channel is only scanned when there are
+     * at least half of the buffer of samples ahead of it, as in single channel
+     * receive, so each channel sees exactly the same sample windows.
+     * @param decoders              character decoders, one per channel
+     * @param outs                  output streams, one per channel (may be the same stream,
+     *                              then the channels share one buffered sink, which keeps the order
+     *                              of the data, and label their data, see SharedDataSink)
+     * @param quietMode             do not report CARRIER / NOCARRIER
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @return  the last refillBuf result (0 on EOF, <0 on error)
+     */
+    public int receiveChannels(IEncodeDecode[] decoders, PrintStream[] outs,
+                               boolean quietMode, boolean outputPrintFilter) {
+        assert decoders.length == channelFsks.length;
+        assert outs.length == channelFsks.length;
+
+        int ret = 0;
+
+        advance = 0;
+        samplesNValid = 0;
+        setSampleBase(0);
+        filterbank.invalidate();
+        Channel[] channels = new Channel[channelFsks.length];
+        int[] pChannels = new int[channelFsks.length];
+        Map<PrintStream, Integer> nShared = new IdentityHashMap<>();
+        for (PrintStream out : outs) {
+            nShared.merge(out, 1, Integer::sum);
+        }
+        Map<PrintStream, SharedDataSink> sinks = new IdentityHashMap<>();
+        for (int k = 0; k < channels.length; k++) {
+            channelFsks[k].fskSampleBufReset();
+            IDataSink sink;
+            if (nShared.get(outs[k]) > 1) {
+                sink = sinks.computeIfAbsent(outs[k], out -> new SharedDataSink(new BufferedDataSink(out)))
+                        .channel("ch" + (k + 1));
+            } else {
+                sink = new BufferedDataSink(outs[k]);
+            }
+            channels[k] = new Channel(channelFsks[k], decoders[k], sink, quietMode, outputPrintFilter, false);
+        }
 
         while ((ret = refillBuf()) > 0 || samplesNValid > 0) {
-            if (carrierAutodetectThreshold > 0.0f && carrierBand < 0) {
-                carrierBand = carrierAutodetect();
-                if (carrierBand < 0) continue;
+            int nAhead = samplesNValid < samplebufSize / 2 ? expectNSamples : samplebufSize / 2;
+            boolean stepped = false;
+            advance = samplesNValid;
+            for (int k = 0; k < channels.length; k++) {
+                while (samplesNValid - pChannels[k] >= nAhead) {
+                    pChannels[k] += channels[k].step(pChannels[k]);
+                    stepped = true;
+                }
+                advance = Math.min(advance, pChannels[k]);
             }
+            if (!stepped && advance == 0 && ret <= 0) {
+                break;
+            }
+            for (int k = 0; k < channels.length; k++) {
+                pChannels[k] -= advance;
+                channels[k].poll();
+            }
+        }
+        for (Channel channel : channels) {
+            channel.finish();
+        }
+        return ret;
+    }
+
+    /**
+     * Frame tracking state of one FSK channel
+     * Scans the sample buffer for frames, keeps carrier, confidence and
+     * amplitude tracking and feeds decoded frames to its own decoder.
+     */
+    private class Channel {
+        private final Fsk fsk;
+        private final IEncodeDecode decoder;
+        private final IDataSink sink;
+        private final boolean quietMode;
+        private final boolean outputPrintFilter;
+        private final boolean rxOne;
+
+        private IFrameListener listener = null;     // report frames to the listener instead of the sink
+
+        private boolean carrier = false;
+        private float confidenceTotal = 0.0f;
+        private float amplitudeTotal = 0.0f;
+        private int nFramesDecoded = 0;
+        private int carrierNSamples = 0;
+        private int noconfidence = 0;
+        private float trackAmplitude = 0.0f;
+        private float peakConfidence = 0.0f;
+
+        /*
+         *    Frame search results (coarse and refined scans) and output buffer
+         */
+        private final FrameResult frame = new FrameResult();
+        private final FrameResult refinedFrame = new FrameResult();
+        private final byte[] dataoutbuf = new byte[DATAOUT_SIZE];
+
+        /**
+         * Constructor
+         * @param fsk                   demodulator of the channel
+         * @param decoder               character decoder of the channel
+         * @param sink                  output of the channel
+         * @param quietMode             do not report CARRIER / NOCARRIER
+         * @param outputPrintFilter     replace non-printable characters with '.'
+         * @param rxOne                 stop after the first carrier/no-carrier event
+         */
+        Channel(Fsk fsk, IEncodeDecode decoder, IDataSink sink,
+                boolean quietMode, boolean outputPrintFilter, boolean rxOne) {
+            this.fsk = fsk;
+            this.decoder = decoder;
+            this.sink = sink;
+            this.quietMode = quietMode;
+            this.outputPrintFilter = outputPrintFilter;
+            this.rxOne = rxOne;
+        }
+
+        /**
+         * Scans the sample buffer for the next frame and decodes it
+         * @param pFrame  position in the sample buffer to scan from
+         * @return  the number of samples to advance the channel by,
+         *          <0 if receiving shall stop (rxOne)
+         */
+        int step(int pFrame) {
             /*
              * The main processing algorithm: scan samplesbuf for FSK frames,
              * looking at an entire frame at once.
              */
-            fLogger.debug( "--------------------------");
-
-            if ( samplesNValid < expectNSamples ) {
-                break;
+            if (fLogger.isDebugEnabled()) {
+                fLogger.debug("--------------------------");
             }
 
            /*
@@ -248,6 +725,7 @@ public class Receiver {
              * prev_stop bit begins (since the "frame" includes the prev_stop).
              */
             int frameStartSample = 0;
+            boolean carrierStart = false;
 
             int tryFirstSample;
             float tryConfidenceSearchLimit;
@@ -257,22 +735,26 @@ public class Receiver {
 
             boolean doRefineFrame = false;
 
-            Number[] resFF = fskp.fskFindFrame(sampleBuf,
+            fsk.fskFindFrame(sampleBuf,
+                    pFrame,
                     expectNSamples,
                     tryFirstSample,
                     tryMaxNSamples,
                     tryStepNsamples,
                     tryConfidenceSearchLimit,
-                    carrier ? expectDataString : expectSyncString);
+                    carrier ? expectDataString : expectSyncString,
+                    frame);
 
-            confidence = (float) resFF[0];
-            bits = (long) resFF[1];
-            amplitude = (float) resFF[2];
-            frameStartSample = (int) resFF[3];
+            confidence = frame.getConfidence();
+            bits = frame.getBits();
+            amplitude = frame.getAmplitude();
+            frameStartSample = frame.getFrameStart();
 
             if(confidence < peakConfidence * 0.75f) {
                 doRefineFrame = true;
-                fLogger.debug(" ... do_refine_frame rescan (confidence %f << %f peak)", confidence, peakConfidence);
+                if (fLogger.isDebugEnabled()) {
+                    fLogger.debug(" ... do_refine_frame rescan (confidence %f << %f peak)", confidence, peakConfidence);
+                }
                 peakConfidence = 0;
             }
             // no-confidence if amplitude drops abruptly to < 25% of the
@@ -284,12 +766,7 @@ public class Receiver {
             if(confidence <= fskConfidenceThreshold) {
                 if (++noconfidence > FSK_MAX_NOCONFIDENCE_BITS) {
                     if (carrier) {
-                        if (!quietMode) {
-                            reportNoCarrier(nFramesDecoded,
-                                    carrierNSamples,
-                                    confidenceTotal,
-                                    amplitudeTotal);
-                        }
+                        lostCarrier(streamPos + pFrame);
                         carrier = false;
                         carrierNSamples = 0;
                         confidenceTotal = 0.0f;
@@ -298,7 +775,7 @@ public class Receiver {
                         trackAmplitude = 0.0f;
 
                         if (rxOne) {
-                            break;
+                            return -1;
                         }
                     }
                 }
@@ -307,9 +784,10 @@ public class Receiver {
                  * next time around the loop we continue searching from where
                  * we left off this time.
                  */
-                advance = tryMaxNSamples;
-                fLogger.debug("@ NOCONFIDENCE=%d advance=%d", noconfidence, advance);
-                continue;
+                if (fLogger.isDebugEnabled()) {
+                    fLogger.debug("@ NOCONFIDENCE=%d advance=%d", noconfidence, tryMaxNSamples);
+                }
+                return tryMaxNSamples;
             }
             // Add a frame's worth of samples to the sample count
             carrierNSamples += frameNSamples;
@@ -321,11 +799,14 @@ public class Receiver {
                 if (!quietMode) {
                     fLogger.info("### CARRIER %.2f @ %.1f Hz ###",
                             (bfskDataRate >= 100)?bfskDataRate + 0.5f:bfskDataRate,
-                            fskp.getbMark() * bandWidth);
+                            fsk.getbMark() * bandWidth + carrierFreqShift);
                 }
 
                 carrier = true;
-                decoder.decode(null, 0, 0, 0); // reset the frame processor
+                carrierStart = true;
+                if (decoder != null) {
+                    decoder.decode(null, 0, 0, 0); // reset the frame processor
+                }
 
                 doRefineFrame = true;
                 fLogger.debug(" ... do_refine_frame rescan (acquired carrier)");
@@ -333,24 +814,26 @@ public class Receiver {
 
             if(doRefineFrame) {
                 if(confidence < Float.POSITIVE_INFINITY && tryStepNsamples > 1) {
-                    tryStepNsamples = Integer.divideUnsigned(tryMaxNSamples, FSK_ANALYZE_NSTEPS_FINE);
+                    tryStepNsamples = pedanticScan ? 1 : Integer.divideUnsigned(tryMaxNSamples, FSK_ANALYZE_NSTEPS_FINE);
                     if(tryStepNsamples == 0) {
                         tryStepNsamples = 1;
                     }
                     tryConfidenceSearchLimit = Float.POSITIVE_INFINITY;
                 }
 
-                resFF = fskp.fskFindFrame(sampleBuf,
+                fsk.fskFindFrame(sampleBuf,
+                        pFrame,
                         expectNSamples,
                         tryFirstSample,
                         tryMaxNSamples,
                         tryStepNsamples,
                         tryConfidenceSearchLimit,
-                        carrier ? expectDataString : expectSyncString);
-                if((float)resFF[0] > confidence) {
-                    bits = (long) resFF[1];
-                    amplitude = (float) resFF[2];
-                    frameStartSample = (int) resFF[3];
+                        carrier ? expectDataString : expectSyncString,
+                        refinedFrame);
+                if(refinedFrame.getConfidence() > confidence) {
+                    bits = refinedFrame.getBits();
+                    amplitude = refinedFrame.getAmplitude();
+                    frameStartSample = refinedFrame.getFrameStart();
                 }
 
             }
@@ -358,11 +841,13 @@ public class Receiver {
             if(peakConfidence < confidence) {
                 peakConfidence = confidence;
             }
-            fLogger.debug("@ confidence=%.3f peak_conf=%.3f amplitude=%.3f track_amplitude=%.3f",
-                    confidence,
-                    peakConfidence,
-                    amplitude,
-                    trackAmplitude);
+            if (fLogger.isDebugEnabled()) {
+                fLogger.debug("@ confidence=%.3f peak_conf=%.3f amplitude=%.3f track_amplitude=%.3f",
+                        confidence,
+                        peakConfidence,
+                        amplitude,
+                        trackAmplitude);
+            }
 
             confidenceTotal += confidence;
             amplitudeTotal += amplitude;
@@ -376,13 +861,15 @@ public class Receiver {
              * But actually advance just a bit less than that to allow
              * for tracking slightly fast signals, hence - nSamplesOverscan.
              */
-            advance = frameStartSample + frameNSamples - nSamplesOverscan;
+            int frameAdvance = frameStartSample + frameNSamples - nSamplesOverscan;
 
-            fLogger.debug("@ nsamples_per_bit=%.3f n_data_bits=%d  frame_start=%d advance=%d",
-                    nSamplesPerBit,
-                    bfskNDataBits,
-                    frameStartSample,
-                    advance);
+            if (fLogger.isDebugEnabled()) {
+                fLogger.debug("@ nsamples_per_bit=%.3f n_data_bits=%d  frame_start=%d advance=%d",
+                        nSamplesPerBit,
+                        bfskNDataBits,
+                        frameStartSample,
+                        frameAdvance);
+            }
 
             // chop off the prev_stop bit
             if(bfskNStopBits != 0.0f) {
@@ -397,32 +884,116 @@ public class Receiver {
             if(bfskMsbFirst) {
                 bits = bitReverse(bits, bfskNDataBits);
             }
-            fLogger.debug("Input: %08x%08x - Databits: %d - Shift: %d",
-                    (int)(bits >>> 32),
-                    (int)bits,
-                    bfskNDataBits,
-                    bfskNStartBits);
-
-            // suppress printing of bfsk_sync_byte bytes
-            if(!bfskDoRxSync || bits != bfskSyncByte) {
-                int dataoutNbytes = decoder.decode(dataoutbuf, DATAOUT_SIZE, bits, bfskNDataBits);
-                if(dataoutNbytes != 0) {
-                    for(int p=0; dataoutNbytes != 0; p++, dataoutNbytes--) {
-                        int print = outputPrintFilter ?
-                                ((Character.isISOControl(dataoutbuf[p]) || Character.isSpaceChar(dataoutbuf[p])) ?  '.' : dataoutbuf[p]) :
-                                dataoutbuf[p];
-                        System.out.write((byte)(print&0xFF));
-                    }
+            if (fLogger.isDebugEnabled()) {
+                fLogger.debug("Input: %08x%08x - Databits: %d - Shift: %d",
+                        (int) (bits >>> 32),
+                        (int) bits,
+                        bfskNDataBits,
+                        bfskNStartBits);
+            }
+
+            if (listener != null) {
+                long position = inputPosition(streamPos + pFrame + frameStartSample);
+                if (carrierStart) {
+                    listener.carrier(position, fsk.getbMark() * bandWidth + carrierFreqShift);
                 }
+                int n = decoder != null ? decodeFrame(bits, decoder, dataoutbuf, outputPrintFilter) : 0;
+                listener.frame(new DecodedFrame(position, bits, Arrays.copyOf(dataoutbuf, n), confidence, amplitude));
+            } else {
+                writeFrame(bits, decoder, dataoutbuf, sink, outputPrintFilter);
             }
+            return frameAdvance;
         }
-        if(carrier && !quietMode) {
-            reportNoCarrier(nFramesDecoded,
-                    carrierNSamples,
-                    confidenceTotal,
-                    amplitudeTotal);
+
+        /**
+         * Lets the output pass buffered data on after its time limit (once per pass of the receive loop)
+         */
+        void poll() {
+            if (sink != null) {
+                sink.poll();
+            }
         }
-        return ret;
+
+        /**
+         * Flushes the output, reports "no carrier" if the channel still has carrier at the end of the stream
+         */
+        void finish() {
+            if (carrier) {
+                lostCarrier(streamPos + samplesNValid);
+            } else if (sink != null) {
+                sink.flush();
+            }
+        }
+
+        /**
+         * Flushes the output, reports "no carrier" to the listener and to the log
+         * @param position  sample position the carrier was lost at (at the demodulator rate)
+         */
+        private void lostCarrier(long position) {
+            if (sink != null) {
+                sink.flush();
+            }
+            if (listener != null) {
+                float nBitsDecoded = nFramesDecoded * bfskFrameNBits;
+                listener.noCarrier(inputPosition(position), new CarrierStats(nFramesDecoded,
+                        confidenceTotal / nFramesDecoded,
+                        amplitudeTotal / nFramesDecoded,
+                        nBitsDecoded * sampleRate / carrierNSamples));
+            }
+            if (!quietMode) {
+                reportNoCarrier(nFramesDecoded,
+                        carrierNSamples,
+                        confidenceTotal,
+                        amplitudeTotal);
+            }
+        }
+    }
+
+    /**
+     * @return frame length in samples (at the demodulator rate)
+     */
+    int getFrameNSamples() {
+        return frameNSamples;
+    }
+
+    /**
+     * Decodes the frame data bits and writes the result
+     * @param bits                  data bits
+     * @param decoder               character decoder
+     * @param dataoutbuf            decoder output buffer
+     * @param sink                  output of decoded data
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     */
+    private void writeFrame(long bits, IEncodeDecode decoder, byte[] dataoutbuf,
+                            IDataSink sink, boolean outputPrintFilter) {
+        int dataoutNbytes = decodeFrame(bits, decoder, dataoutbuf, outputPrintFilter);
+        if(dataoutNbytes > 0) {
+            sink.write(dataoutbuf, 0, dataoutNbytes);
+        }
+    }
+
+    /**
+     * Decodes the frame data bits
+     * @param bits                  data bits
+     * @param decoder               character decoder
+     * @param dataoutbuf            decoder output buffer
+     * @param outputPrintFilter     replace non-printable characters with '.'
+     * @return  the number of bytes decoded into dataoutbuf
+     */
+    private int decodeFrame(long bits, IEncodeDecode decoder, byte[] dataoutbuf, boolean outputPrintFilter) {
+        // suppress printing of bfsk_sync_byte bytes
+        if(bfskDoRxSync && bits == bfskSyncByte) {
+            return 0;
+        }
+        int dataoutNbytes = decoder.decode(dataoutbuf, DATAOUT_SIZE, bits, bfskNDataBits);
+        if (outputPrintFilter) {
+            for (int p = 0; p < dataoutNbytes; p++) {
+                if (Character.isISOControl(dataoutbuf[p]) || Character.isSpaceChar(dataoutbuf[p])) {
+                    dataoutbuf[p] = '.';
+                }
+            }
+        }
+        return dataoutNbytes;
     }
 
     /**
@@ -430,6 +1001,37 @@ public class Receiver {
      * @return carrier band
      */
     private int carrierAutodetect() {
+        int cBand = carrierDetector != null ? scanCarrierAveraged() : scanCarrier();
+        if (cBand < 0) {
+            fLogger.debug("autodetected carrier band was not found");
+            return -1;
+        }
+        // default negative shift -- reasonable?
+        int bShift = (int) (- (float)(autodetectShift + bandWidth/2.0f)/bandWidth);
+        if (bfskInvertedFreqs) {
+            bShift *= -1;
+        }
+       /* only accept a carrier as bMark if it will not result in a bSpace band which is "too low".  */
+        int bSpace = cBand + bShift;
+        if (bSpace < 1 || bSpace >= fskp.getnBands()) {
+            fLogger.debug("autodetected space band out of range");
+            if (carrierDetector != null) {
+                carrierDetector.reset();
+            }
+            return -1;
+        }
+        fLogger.debug("### TONE freq=%.1f ###", cBand*bandWidth);
+        fskp.fskSetTonesByBandshift(cBand, bShift);
+        return cBand;
+    }
+
+    /**
+     * Scans the sample buffer for carrier, one chunk at a time
+     * Advances the buffer past the chunk where carrier has been found
+     * (or past all scanned chunks)
+     * @return carrier band or -1 if no carrier was detected
+     */
+    private int scanCarrier() {
         int cBand = -1;
         int i;
         float nSamplesPerScan = nSamplesPerBit;
@@ -446,26 +1048,66 @@ public class Receiver {
         if (advance > samplesNValid) {
             advance = samplesNValid;
         }
-        if (cBand < 0) {
-            fLogger.debug("autodetected carrier band was not found");
-            return -1;
-        }
-        // default negative shift -- reasonable?
-        int bShift = (int) (- (float)(autodetectShift + bandWidth/2.0f)/bandWidth);
-        if (bfskInvertedFreqs) {
-            bShift *= -1;
+        return cBand;
+    }
+
+    /**
+     * Feeds the sample buffer to the averaging carrier detector
+     * While there is no peak, one segment every CARRIER_AVG_HOP_SEGMENTS segments
+     * is scanned. When a skipping scan finds a peak, the average is dropped and the
+     * samples are scanned again, contiguously, from the end of the previous segment
+     * (the start of the buffer at most), so the detection sees the start of the
+     * signal as a contiguous scan would.
+     * The incomplete segment at the end of the buffer is kept for the next call,
+     * and the samples to skip past the end of the buffer are skipped at the
+     * start of the next one, so the segment grid is kept across buffer refills
+     * @return carrier band or -1 if no stable carrier was detected
+     */
+    private int scanCarrierAveraged() {
+        int cBand = -1;
+        int i;
+        int nSamplesPerSegment = (int) Math.min(nSamplesPerBit, carrierDetector.getFftSize());
+        int hop = nSamplesPerSegment * CARRIER_AVG_HOP_SEGMENTS;
+        int prevEnd = 0;            // the end of the previous segment scanned
+        int rescanEnd = -1;         // the segment which has triggered the contiguous scan
+        for (i = carrierScanSkip; i + nSamplesPerSegment <= samplesNValid; ) {
+            cBand = carrierDetector.addSegment(sampleBuf, i, nSamplesPerSegment);
+            if (cBand >= 0) {
+                break;
+            }
+            boolean peak = carrierDetector.hasPeak();
+            if (peak && !carrierScanContiguous && i > prevEnd) {
+                carrierScanContiguous = true;
+                carrierDetector.reset();
+                rescanEnd = i;
+                i = prevEnd;
+                continue;
+            }
+            if (i >= rescanEnd) {
+                carrierScanContiguous = peak;
+            }
+            prevEnd = i + nSamplesPerSegment;
+            i += carrierScanContiguous ? nSamplesPerSegment : hop;
         }
-       /* only accept a carrier as bMark if it will not result in a bSpace band which is "too low".  */
-        int bSpace = cBand + bShift;
-        if (bSpace < 1 || bSpace >= fskp.getnBands()) {
-            fLogger.debug("autodetected space band out of range");
-            return -1;
+        carrierScanSkip = 0;
+        if (cBand >= 0) {
+            advance = Math.min(i + nSamplesPerSegment, samplesNValid);
+        } else if (i >= samplesNValid) {
+            advance = samplesNValid;
+            carrierScanSkip = i - samplesNValid;
+        } else {
+            advance = i > 0 ? i : samplesNValid;    // nothing to scan (EOF): drop the tail
         }
-        fLogger.debug("### TONE freq=%.1f ###", cBand*bandWidth);
-        fskp.fskSetTonesByBandshift(cBand, bShift);
         return cBand;
     }
 
+    /**
+     * @return the number of transforms done by the averaging carrier detector (0 if there is none)
+     */
+    long getCarrierNTransforms() {
+        return carrierDetector != null ? carrierDetector.getNTransforms() : 0;
+    }
+
     /**
      * Report "no carrier"
      * @param nFramesDecoded        total number of frames decoded
@@ -565,16 +1207,55 @@ public class Receiver {
     }
 
     /**
-     * Shifts receiver sample buffer for p positions left
+     * Moves receiver sample buffer window for p positions right
      * (sampleBuf[0] <-- sampleBuf[p], sampleBuf[1] <-- sampleBuf[p+1], ...)
+     * No samples are copied unless the window has to be moved back to the
+     * start of the store to make room for the next read
      * @param p  positions to shift
      */
     protected void shiftSampleBuf(int p) {
-        int i,j;
-        for (i=p, j=0; i<sampleBuf.capacity(); i++, j++){
-            sampleBuf.put(j, sampleBuf.get(i));
+        samplesNValid -= p;
+        setSampleBase(sampleBase + p);
+    }
+
+    /**
+     * Places the sample buffer window
+     * If the window does not fit the store, the valid samples are copied to
+     * the start of it: one bulk copy per (SAMPLE_STORE_FACTOR - 1) * samplebufSize
+     * samples of advance
+     * @param p  position of the window in the store
+     */
+    private void setSampleBase(int p) {
+        sampleBase = p;
+        if (sampleBase + samplebufSize > sampleStore.capacity()) {
+            System.arraycopy(sampleBufRaw.array(), sampleBase * Float.BYTES,
+                    sampleBufRaw.array(), 0, samplesNValid * Float.BYTES);
+            sampleBase = 0;
         }
-        sampleBuf.position(0);
+        FloatBuffer window = sampleStore.duplicate();
+        window.position(sampleBase);
+        window.limit(sampleBase + samplebufSize);
+        sampleBuf = window.slice();
+    }
+
+    /**
+     * Reads input rate samples and channelizes them into the sample buffer
+     * @param pSamples  position in the sample buffer to store the first sample to
+     * @param nSamples  maximum number of samples to store
+     * @return  >0   OK, number of samples stored
+     *          ==0  OK, EOF reached
+     *          <0   Error
+     */
+    private int readChannelized(int pSamples, int nSamples) {
+        int r;
+        int n = 0;
+        do {
+            r = rxSaIn.read(inputBufRaw, 0, (nSamples - n) * channelizer.getDecimation());
+            if (r > 0) {
+                n += channelizer.process(inputBuf, 0, r, sampleBuf, pSamples + n);
+            }
+        } while (r > 0 && n == 0);
+        return r > 0 ? n : r;
     }
 
     /**
@@ -585,7 +1266,9 @@ public class Receiver {
      */
     protected int refillBuf() {
         int r = -1;
-        fLogger.debug("Refilling buffer: advance = %d, samplesNValid = %d", advance, samplesNValid);
+        if (fLogger.isDebugEnabled()) {
+            fLogger.debug("Refilling buffer: advance = %d, samplesNValid = %d", advance, samplesNValid);
+        }
         /*
          * ... not really required for Java, JVM will take care of it ...
          *  Invariants:
@@ -593,16 +1276,7 @@ public class Receiver {
          *     assert advance <= samplesNValid;
          */
 
-        if (advance == samplebufSize) {
-            samplesNValid = 0;
-            advance = 0;
-        }
-        /* Shift the samples in sampleBuf by 'advance' samples */
-        if (advance != 0) {
-            shiftSampleBuf(advance);
-            samplesNValid -= advance;
-            advance = 0;
-        }
+        int shift = moveSampleBuf();
         if (samplesNValid < samplebufSize / 2) {
             int readNSamples = samplebufSize / 2;
         /*
@@ -612,14 +1286,51 @@ public class Receiver {
          *     assert samplesNValid + readNSamples <= samplebufSize;
          */
 
-            r = rxSaIn.read(sampleBufRaw, samplesNValid, readNSamples);
-            fLogger.debug("Reading audio (%d samples) returns %d", readNSamples, r);
+            r = channelizer != null ?
+                    readChannelized(samplesNValid, readNSamples) :
+                    rxSaIn.read(sampleBufRaw, sampleBase + samplesNValid, readNSamples);
+            if (fLogger.isDebugEnabled()) {
+                fLogger.debug("Reading audio (%d samples) returns %d", readNSamples, r);
+            }
             if (r < 0) {
                 fLogger.error("Audio file read error");
             } else {
                 samplesNValid += r;
             }
         }
+        sampleBufUpdated(shift);
         return r;
     }
+
+    /**
+     * Moves the sample buffer window by 'advance' samples
+     * @return  the number of samples the window was moved by
+     */
+    private int moveSampleBuf() {
+        int shift = advance;
+        streamPos += advance;
+        if (advance == samplebufSize) {
+            samplesNValid = 0;
+            advance = 0;
+        }
+        if (advance != 0) {
+            shiftSampleBuf(advance);
+            advance = 0;
+        }
+        return shift;
+    }
+
+    /**
+     * Notifies the demodulators about sample buffer update
+     * @param shift  the number of samples the window was moved by
+     */
+    private void sampleBufUpdated(int shift) {
+        fskp.fskSampleBufUpdate(shift, samplesNValid);
+        if (filterbank != null) {
+            filterbank.invalidate();
+            for (Fsk fsk : channelFsks) {
+                fsk.fskSampleBufUpdate(shift, samplesNValid);
+            }
+        }
+    }
 }
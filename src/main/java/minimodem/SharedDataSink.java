@@ -0,0 +1,62 @@
+/*
+ * minimodem4j
+ * SharedDataSink.java
+ */
+package minimodem;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receiver output shared by several channels
+ * Every channel writes through its own view (see channel()). When the data
+ * on the output changes from one channel to another, the view writes a line
+ * feed and the label of its channel first, so the data of the channels can
+ * be told apart (the line feed before a label is always added, never data):
+ *   [ch1] data of channel 1
+ *   [ch2] data of channel 2
+ * Not thread safe, as the sink it wraps.
+ */
+public class SharedDataSink {
+    private final IDataSink sink;
+    private IDataSink lastWriter = null;
+
+    /**
+     * Constructor
+     * @param sink  output of all channels
+     */
+    public SharedDataSink(IDataSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Gets the view of the output for the channel
+     * @param label  channel label
+     * @return  output of the channel
+     */
+    public IDataSink channel(String label) {
+        final byte[] labelBytes = ("[" + label + "] ").getBytes(StandardCharsets.US_ASCII);
+        return new IDataSink() {
+            public void write(byte[] data, int offset, int length) {
+                if (length <= 0) {
+                    return;
+                }
+                if (lastWriter != this) {
+                    if (lastWriter != null) {
+                        sink.write(new byte[] {'\n'}, 0, 1);
+                    }
+                    sink.write(labelBytes, 0, labelBytes.length);
+                    lastWriter = this;
+                }
+                sink.write(data, offset, length);
+            }
+
+            public void flush() {
+                sink.flush();
+            }
+
+            public void poll() {
+                sink.poll();
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * minimodem4j
+ * StreamingReceiver.java
+ */
+package minimodem;
+
+import picocli.CommandLine;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Push mode receiver for applications embedding the modem
+ * The application offers chunks of float or 16 bit samples of any size as
+ * they arrive (e.g. from a network stack) and gets decoded frames with their
+ * confidence, amplitude and sample position through the listener, on the
+ * offering thread: there is no receive thread and no input device.
+ * The receive loop state (carrier, amplitude and confidence tracking) persists
+ * between the calls, the output is the same as when the samples are read from a file.
+ * Not thread safe: one thread shall offer the samples.
+ */
+public class StreamingReceiver {
+    private final Receiver receiver;
+    private float[] floats = new float[0];      // 16 bit samples conversion scratch
+
+    /**
+     * Constructor
+     * @param sampleRate  rate of the samples to be offered
+     * @param listener    receiver of decoded frames and carrier events
+     * @param args        modem options, as on the command line for --rx mode,
+     *                    e.g. {"1200"} or {"--baudot", "rtty", "--quiet"}
+     * @throws IllegalArgumentException if the options are invalid or not supported
+     *                    in push mode (--channel, --batch, --segment)
+     */
+    public StreamingReceiver(int sampleRate, IFrameListener listener, String... args) {
+        Minimodem modem = new Minimodem();
+        String[] rxArgs = new String[args.length + 1];
+        rxArgs[0] = "--rx";
+        System.arraycopy(args, 0, rxArgs, 1, args.length);
+        try {
+            new CommandLine(modem).parseArgs(rxArgs);
+        } catch (CommandLine.ParameterException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        if (modem.configure() != 0) {
+            throw new IllegalArgumentException("Invalid modem options");
+        }
+        if (!modem.channels.isEmpty() || modem.batch != null || modem.segmentSeconds > 0.0f) {
+            throw new IllegalArgumentException("--channel, --batch and --segment are not supported in push mode");
+        }
+        receiver = new Receiver(sampleRate, modem);
+        receiver.configure(modem.getExpectDataString());
+        receiver.startPush(modem.bfskDatabitsEncodeDecode, listener,
+                modem.quiteMode, modem.outputPrintFilter, modem.rxOne);
+    }
+
+    /**
+     * Offers float samples
+     * @param samples  samples in [-1.0, 1.0]
+     * @param offset   the first sample
+     * @param length   number of samples
+     * @return  false if receiving has stopped (--rx-one), the samples are ignored then
+     */
+    public boolean offer(float[] samples, int offset, int length) {
+        return receiver.push(FloatBuffer.wrap(samples), offset, length);
+    }
+
+    /**
+     * Offers 16 bit samples
+     * @param samples  samples
+     * @param offset   the first sample
+     * @param length   number of samples
+     * @return  false if receiving has stopped (--rx-one), the samples are ignored then
+     */
+    public boolean offer(short[] samples, int offset, int length) {
+        if (floats.length < length) {
+            floats = new float[length];
+        }
+        for (int i = 0; i < length; i++) {
+            floats[i] = ((float) samples[offset + i]) / (float) Short.MAX_VALUE;
+        }
+        return receiver.push(FloatBuffer.wrap(floats), 0, length);
+    }
+
+    /**
+     * Ends the stream: decodes the samples left and reports "no carrier"
+     * if the carrier is still there
+     */
+    public void close() {
+        receiver.endPush();
+    }
+}
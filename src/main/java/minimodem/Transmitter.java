@@ -13,10 +13,17 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 public class Transmitter {
     private static final Logger fLogger = LogManager.getFormatterLogger("Transmitter");
 
+    private final static int TX_CHUNK_SIZE = 65_536;    // bytes read and encoded at once
+    private final static int TX_MAX_WORDS_PER_BYTE = 2; // encoders stuff up to 2 words per byte (Baudot shift + char)
+
     private final SimpleAudio txSaOut;
     private final SaToneGenerator txToneGenerator;
     private final boolean txPrintEot;
@@ -30,6 +37,7 @@ public class Transmitter {
     private final boolean bfskMsbFirst;
     private final int bfskDoTxSyncBytes;
     private final int bfskSyncByte;
+    private final float txShaping;
 
     private int txTransmitting = 0;
     public int txLeaderBitsLen = 2;
@@ -59,54 +67,94 @@ public class Transmitter {
         bfskMsbFirst = modem.isBfskMsbFirst();
         bfskDoTxSyncBytes = modem.getBfskDoTxSyncBytes();
         bfskSyncByte = modem.getBfskSyncByte();
+        txShaping = modem.getTxShaping();
     }
 
     /**
      * Transmits (bytes from) stdin using IEncodeDecode interface provided
      * @param encoder
      */
-    public void fskTransmitStdin(IEncodeDecode encoder)
-    {
+    public void fskTransmitStdin(IEncodeDecode encoder) {
+        fskTransmit(encoder, Channels.newChannel(System.in));
+    }
+
+    /**
+     * Transmits bytes from the stream using IEncodeDecode interface provided
+     * @param encoder   encoder
+     * @param in        input stream
+     */
+    public void fskTransmit(IEncodeDecode encoder, InputStream in) {
+        fskTransmit(encoder, Channels.newChannel(in));
+    }
+
+    /**
+     * Transmits bytes from the channel using IEncodeDecode interface provided
+     * The input is read in chunks of up to TX_CHUNK_SIZE bytes (whatever is
+     * available), every chunk is encoded into the reusable word buffer, transmitted
+     * and the tone generator is flushed, so interactive input is still sent as
+     * soon as it is there, not when the tone generator block fills.
+     * @param encoder   encoder
+     * @param in        input channel
+     */
+    public void fskTransmit(IEncodeDecode encoder, ReadableByteChannel in) {
         txBitNsamples = (int) (txSaOut.getRate() / bfskDataRate + 0.5f);
+        txToneGenerator.toneShaping((int) (txShaping * txBitNsamples + 0.5f));
 
-        boolean endOfFile = false;
-        while (!endOfFile) {
-            int nextByte;
-            try {
-                 nextByte = System.in.read();
-                 if (nextByte != -1) {
-                     int[] bits = new int[2];
-                     int j;
-                     int nwords = encoder.encode(bits,(byte)(nextByte&0xFF));
-                     if(txTransmitting == 0) {
-                         txTransmitting = 1;
-                         /* emit leader tone (mark) */
-                         for (j = 0; j < txLeaderBitsLen; j++) {
-                             txToneGenerator.Tone(txSaOut, invertStartStop ? bfskSpaceF : bfskMarkF, txBitNsamples);
-                         }
-                     }
-                     if(txTransmitting < 2) {
-                         txTransmitting = 2;
-                         /* emit "preamble" of sync bytes */
-                         for (j = 0; j < bfskDoTxSyncBytes; j++) {
-                             fskTransmitFrame(bfskSyncByte);
-                         }
-                     }
-                     /* emit data bits */
-                     for(j = 0; j<nwords; j++) {
-                         fskTransmitFrame(bits[j]);
-                     }
-                 }
-                 else {
-                     endOfFile = true;
-                 }
-            } catch (IOException e) {
-                endOfFile = true;
+        ByteBuffer chunk = ByteBuffer.allocate(TX_CHUNK_SIZE);
+        int[] words = new int[TX_CHUNK_SIZE * TX_MAX_WORDS_PER_BYTE];
+        int[] bits = new int[TX_MAX_WORDS_PER_BYTE];
+        try {
+            while (in.read(chunk) >= 0) {
+                chunk.flip();
+                if (!chunk.hasRemaining()) {
+                    continue;
+                }
+                int nwords = 0;
+                while (chunk.hasRemaining()) {
+                    int n = encoder.encode(bits, chunk.get());
+                    for (int j = 0; j < n; j++) {
+                        words[nwords++] = bits[j];
+                    }
+                }
+                chunk.clear();
+                fskTransmitWords(words, nwords);
+                txToneGenerator.flush(txSaOut);
             }
+        } catch (IOException e) {
+            fLogger.error("Failed to read data to transmit: [%s]", e.getMessage());
         }
         if (txTransmitting !=0) {
             txStopTransmitHandler();
         }
+        txToneGenerator.flush(txSaOut);
+    }
+
+    /**
+     * Transmits encoded data words
+     * Emits the leader tone and the sync bytes first if the transmission is not started yet
+     * @param words     data words
+     * @param nwords    the number of data words
+     */
+    private void fskTransmitWords(int[] words, int nwords) {
+        int j;
+        if(txTransmitting == 0) {
+            txTransmitting = 1;
+            /* emit leader tone (mark) */
+            for (j = 0; j < txLeaderBitsLen; j++) {
+                txToneGenerator.Tone(txSaOut, invertStartStop ? bfskSpaceF : bfskMarkF, txBitNsamples);
+            }
+        }
+        if(txTransmitting < 2) {
+            txTransmitting = 2;
+            /* emit "preamble" of sync bytes */
+            for (j = 0; j < bfskDoTxSyncBytes; j++) {
+                fskTransmitFrame(bfskSyncByte);
+            }
+        }
+        /* emit data bits */
+        for(j = 0; j<nwords; j++) {
+            fskTransmitFrame(words[j]);
+        }
     }
 
     /**
@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--batch-threads"
+ */
+package minimodem.arghelpers;
+
+public class BatchThreadsParameterConsumer extends PositiveIntParameterConsumer {
+    public BatchThreadsParameterConsumer() {
+        super("--batch-threads");
+    }
+}
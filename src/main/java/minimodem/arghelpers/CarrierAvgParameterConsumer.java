@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--carrier-avg"
+ */
+package minimodem.arghelpers;
+
+public class CarrierAvgParameterConsumer extends PositiveIntParameterConsumer {
+    public CarrierAvgParameterConsumer() {
+        super("--carrier-avg");
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--channel"
+ * Accepts {mark:space} pairs of positive frequencies, the option may be repeated
+ */
+package minimodem.arghelpers;
+
+import picocli.CommandLine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+public class ChannelParameterConsumer implements CommandLine.IParameterConsumer {
+    public void consumeParameters(Stack<String> args, CommandLine.Model.ArgSpec argSpec,
+                                  CommandLine.Model.CommandSpec commandSpec) {
+
+        String arg = args.pop();
+        float[] tones = null;
+        String[] freqs = arg.split(":");
+        if (freqs.length == 2) {
+            try {
+                tones = new float[] {Float.parseFloat(freqs[0]), Float.parseFloat(freqs[1])};
+            } catch (Exception ignored) {
+            }
+        }
+        if (tones == null || tones[0] <= 0.0f || tones[1] <= 0.0f) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("Invalid value '%s' for option '--channel': " +
+                            "value shall be {mark:space}, both frequencies positive.", arg));
+        }
+        List<float[]> channels = argSpec.getValue();
+        if (channels == null) {
+            channels = new ArrayList<>();
+        }
+        channels.add(tones);
+        argSpec.setValue(channels);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--oscillator"
+ */
+package minimodem.arghelpers;
+
+import minimodem.simpleaudio.OscillatorType;
+import picocli.CommandLine;
+import java.util.Stack;
+
+public class OscillatorParameterConsumer implements CommandLine.IParameterConsumer {
+    public void consumeParameters(Stack<String> args, CommandLine.Model.ArgSpec argSpec,
+                                  CommandLine.Model.CommandSpec commandSpec) {
+        String arg = args.pop();
+        OscillatorType value = null;
+        for (OscillatorType t : OscillatorType.values()) {
+            if (t.getLabel().equalsIgnoreCase(arg)) {
+                value = t;
+                break;
+            }
+        }
+        if (value == null) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("Invalid value '%s' for option '--oscillator': " +
+                            "value may be 'table', 'nco' or 'nco-linear'.", arg));
+        }
+        argSpec.setValue(value);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves parameters of Integer type that shall be positive
+ */
+package minimodem.arghelpers;
+
+import picocli.CommandLine;
+import java.util.Stack;
+
+public class PositiveIntParameterConsumer implements CommandLine.IParameterConsumer {
+    private final String name;
+    protected PositiveIntParameterConsumer(String nm) {
+        name = nm;
+    }
+    public void consumeParameters(Stack<String> args, CommandLine.Model.ArgSpec argSpec,
+                                  CommandLine.Model.CommandSpec commandSpec) {
+
+        String arg = args.pop();
+        int value = 0;
+        try {
+            value = Integer.parseInt(arg);
+        } catch (Exception ignored) {
+        }
+        if (value <= 0) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("Invalid value '%s' for option '%s': " +
+                            "value may be positive integer only.", arg, name));
+        }
+        argSpec.setValue(value);
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--read-ahead"
+ */
+package minimodem.arghelpers;
+
+public class ReadAheadParameterConsumer extends PositiveIntParameterConsumer {
+    public ReadAheadParameterConsumer() {
+        super("--read-ahead");
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--rx-threads"
+ */
+package minimodem.arghelpers;
+
+public class RxThreadsParameterConsumer extends PositiveIntParameterConsumer {
+    public RxThreadsParameterConsumer() {
+        super("--rx-threads");
+    }
+}
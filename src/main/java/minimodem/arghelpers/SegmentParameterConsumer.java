@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--segment"
+ */
+package minimodem.arghelpers;
+
+public class SegmentParameterConsumer extends PositiveFloatParameterConsumer {
+    public SegmentParameterConsumer() {
+        super("--segment");
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--segment-threads"
+ */
+package minimodem.arghelpers;
+
+public class SegmentThreadsParameterConsumer extends PositiveIntParameterConsumer {
+    public SegmentThreadsParameterConsumer() {
+        super("--segment-threads");
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--shaping"
+ * Accepts the fraction of the bit duration, 0.0 < value <= 1.0
+ */
+package minimodem.arghelpers;
+
+import picocli.CommandLine;
+import java.util.Stack;
+
+public class ShapingParameterConsumer implements CommandLine.IParameterConsumer {
+    public void consumeParameters(Stack<String> args, CommandLine.Model.ArgSpec argSpec,
+                                  CommandLine.Model.CommandSpec commandSpec) {
+
+        String arg = args.pop();
+        float value = 0.0f;
+        try {
+            value = Float.parseFloat(arg);
+        } catch (Exception ignored) {
+        }
+        if (!(value > 0.0f && value <= 1.0f)) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("Invalid value '%s' for option '--shaping': " +
+                            "value shall be a fraction of the bit, 0.0 < value <= 1.0.", arg));
+        }
+        argSpec.setValue(value);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * minimodem4j
+ * picocli argument parser helper class
+ * Serves "--analyzer"
+ */
+package minimodem.arghelpers;
+
+import minimodem.fsk.ToneAnalyzerType;
+import picocli.CommandLine;
+import java.util.Stack;
+
+public class ToneAnalyzerParameterConsumer implements CommandLine.IParameterConsumer {
+    public void consumeParameters(Stack<String> args, CommandLine.Model.ArgSpec argSpec,
+                                  CommandLine.Model.CommandSpec commandSpec) {
+        String arg = args.pop();
+        ToneAnalyzerType value = null;
+        for (ToneAnalyzerType t : ToneAnalyzerType.values()) {
+            if (t.getLabel().equalsIgnoreCase(arg)) {
+                value = t;
+                break;
+            }
+        }
+        if (value == null) {
+            throw new CommandLine.ParameterException(commandSpec.commandLine(),
+                    String.format("Invalid value '%s' for option '--analyzer': " +
+                            "value may be 'fft', 'goertzel' or 'sdft'.", arg));
+        }
+        argSpec.setValue(value);
+    }
+}
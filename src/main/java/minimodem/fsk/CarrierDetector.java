@@ -0,0 +1,141 @@
+/*
+ * minimodem4j
+ * CarrierDetector.java
+ */
+package minimodem.fsk;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Streaming carrier detector
+ * Welch-style power spectrum estimator: Hann windowed segments are transformed
+ * one by one and their power spectra are accumulated into a running
+ * (exponentially weighted) average which persists between calls, i.e.: across
+ * sample buffer refills.
+ * The carrier is reported once the peak of the averaged spectrum is above the
+ * threshold and stays in the same band for nStableSegments segments in a row.
+ */
+public class CarrierDetector {
+    private static final Logger fLogger = LogManager.getFormatterLogger("CarrierDetector");
+
+    private final int fftSize;
+    private final int nBands;
+    private final float minMagThreshold;
+    private final int nStableSegments;
+    private final float alpha;
+    private final FloatFFT_1D fft;
+
+    private final float[] fftbuf;
+    private final float[] avgPow;
+    private float[] window = new float[0];
+
+    private int nSegments = 0;
+    private long nTransforms = 0;       // since the construction, for statistics
+    private int peakBand = -1;
+    private int peakNSegments = 0;
+
+    /**
+     * Constructor
+     * @param fftSize           FFT size (the maximum segment size)
+     * @param minMagThreshold   Carrier threshold
+     * @param nStableSegments   the number of segments the peak shall stay in the same band
+     */
+    public CarrierDetector(int fftSize, float minMagThreshold, int nStableSegments) {
+        this.fftSize = fftSize;
+        this.nBands = fftSize/2 + 1;
+        this.minMagThreshold = minMagThreshold;
+        this.nStableSegments = nStableSegments;
+        this.alpha = 2.0f / (nStableSegments + 1);
+        fft = new FloatFFT_1D(fftSize);
+        fftbuf = new float[fftSize*2];
+        avgPow = new float[nBands];
+    }
+
+    /**
+     * Drops the accumulated spectrum
+     */
+    public void reset() {
+        Arrays.fill(avgPow, 0.0f);
+        nSegments = 0;
+        peakBand = -1;
+        peakNSegments = 0;
+    }
+
+    /**
+     * Adds a segment to the averaged power spectrum
+     * @param sampleBuf   Sample buffer
+     * @param pSamples    Position of the first sample of the segment
+     * @param nSamples    Segment size (<= fftSize)
+     * @return  Carrier band or -1 if no stable carrier was detected yet
+     */
+    public int addSegment(FloatBuffer sampleBuf, int pSamples, int nSamples) {
+        if (window.length != nSamples) {
+            window = new float[nSamples];
+            for (int i = 0; i < nSamples; i++) {
+                window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / nSamples));
+            }
+        }
+        for (int i = 0; i < nSamples; i++) {
+            fftbuf[i] = sampleBuf.get(pSamples + i) * window[i];
+        }
+        Arrays.fill(fftbuf, nSamples, fftbuf.length, 0.0f);
+        fft.realForwardFull(fftbuf);
+        nTransforms++;
+
+        // The first segment initializes the average
+        float a = nSegments == 0 ? 1.0f : alpha;
+        nSegments++;
+        for (int i = 0; i < nBands; i++) {
+            float re = fftbuf[2*i];
+            float im = fftbuf[2*i+1];
+            avgPow[i] += a * (re*re + im*im - avgPow[i]);
+        }
+
+        /*
+         * Hann window coherent gain is 0.5, so magScalar matches the
+         * magnitudes of Fsk.fskDetectCarrier
+         */
+        float magScalar = 1.0f / nSamples;
+        float powThreshold = minMagThreshold / magScalar;
+        powThreshold *= powThreshold;
+
+        float maxPow = 0.0f;
+        int band = -1;
+        for (int i = 1; i < nBands; i++) { /* start detection at the first non-DC band */
+            if (avgPow[i] >= powThreshold && maxPow < avgPow[i]) {
+                maxPow = avgPow[i];
+                band = i;
+            }
+        }
+        if (band >= 0 && band == peakBand) {
+            peakNSegments++;
+        } else {
+            peakBand = band;
+            peakNSegments = band >= 0 ? 1 : 0;
+        }
+        if (fLogger.isDebugEnabled()) {
+            fLogger.debug("segment #%d: peak band=%d (%d segments)", nSegments, peakBand, peakNSegments);
+        }
+        return peakNSegments >= nStableSegments ? peakBand : -1;
+    }
+
+    /**
+     * @return true if the averaged spectrum has a peak above the threshold (stable or not)
+     */
+    public boolean hasPeak() {
+        return peakBand >= 0;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public long getNTransforms() {
+        return nTransforms;
+    }
+}
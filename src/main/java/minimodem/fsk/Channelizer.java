@@ -0,0 +1,238 @@
+/*
+ * minimodem4j
+ * Channelizer.java
+ */
+package minimodem.fsk;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Decimating channelizer front end for the FSK demodulator
+ * Moves the mark/space pair of a wideband capture to a low rate stream:
+ *   - complex mixer shifts the center of the pair to baseband
+ *   - windowed sinc low-pass FIR, evaluated only for the samples kept
+ *     after decimation (polyphase decimator)
+ *   - the decimated baseband is moved up to the quarter of the output rate
+ *     and its real part is taken, so the output is a real signal again
+ *     and Fsk processes it unchanged at the output rate, just with
+ *     fftSize of dozens instead of thousands.
+ * The state (mixer phase, filter history, decimation phase) persists
+ * between process() calls, so the input may be fed in chunks of any size.
+ */
+public class Channelizer {
+    private static final Logger fLogger = LogManager.getFormatterLogger("Channelizer");
+
+    /*
+     * Minimal number of output samples per bit: keeps the frame position
+     * resolution of the receiver reasonable
+     */
+    private final static int MIN_SAMPLES_PER_BIT = 16;
+    /*
+     * Output rate to (tone spacing + bandwidth) ratio: the pair, including
+     * filter bandwidth, shall be within the passband of the low-pass filter,
+     * which is (0.2 .. 0.25) of the output rate
+     */
+    private final static float RATE_TO_SPAN = 3.0f;
+    /*
+     * Distance, in data rate units, between the tones and their images
+     * at the output: the real output signal mirrors the pair around zero
+     * and half of the output rate, and the images shall be far enough in
+     * the sidelobes of the bit-length analysis window
+     */
+    private final static float IMAGE_GUARD_BITS = 16.0f;
+    /*
+     * Low-pass filter length per decimation step
+     */
+    private final static int TAPS_PER_STEP = 32;
+
+    private final int decimation;
+    private final int outputRate;
+    private final float markF;
+    private final float spaceF;
+
+    private final float[] taps;
+    private final int nTaps;
+
+    /*
+     * Mixer: complex rotator (cos, sin) advanced by (cosD, sinD) every sample
+     */
+    private final double cosD;
+    private final double sinD;
+    private double mixCos;
+    private double mixSin;
+    private int mixN;
+
+    /*
+     * Filter history, mirrored ([i] == [i + nTaps]) so that the newest nTaps
+     * samples are always contiguous
+     */
+    private final float[] histRe;
+    private final float[] histIm;
+    private int histPos;
+    private int phase;
+    private int nOut;
+
+    /**
+     * Constructor
+     * @param sampleRate    input sample rate
+     * @param fMark         mark frequency
+     * @param fSpace        space frequency
+     * @param bandWidth     filter bandwidth of the demodulator
+     * @param dataRate      data rate (baud)
+     */
+    public Channelizer(int sampleRate, float fMark, float fSpace, float bandWidth, float dataRate) {
+        decimation = chooseDecimation(sampleRate, fMark, fSpace, bandWidth, dataRate);
+        outputRate = sampleRate / decimation;
+
+        float fCenter = (fMark + fSpace) / 2.0f;
+        float fIf = outputRate / 4.0f;
+        markF = fIf + fMark - fCenter;
+        spaceF = fIf + fSpace - fCenter;
+
+        nTaps = TAPS_PER_STEP * decimation + 1;
+        taps = new float[nTaps];
+        double fCut = 0.25 / decimation;           // cutoff, relative to the input rate
+        double gain = 0.0;
+        for (int i = 0; i < nTaps; i++) {
+            double m = i - (nTaps - 1) / 2.0;
+            double sinc = m == 0.0 ? 2.0 * fCut : Math.sin(2.0 * Math.PI * fCut * m) / (Math.PI * m);
+            double hamming = 0.54 - 0.46 * Math.cos(2.0 * Math.PI * i / (nTaps - 1));
+            taps[i] = (float) (sinc * hamming);
+            gain += taps[i];
+        }
+        /*
+         * Unity gain at DC, times 2 to make up for the image rejected by the
+         * complex mixer: the output tones keep the input amplitude
+         */
+        for (int i = 0; i < nTaps; i++) {
+            taps[i] = (float) (taps[i] * 2.0 / gain);
+        }
+
+        cosD = Math.cos(2.0 * Math.PI * fCenter / sampleRate);
+        sinD = -Math.sin(2.0 * Math.PI * fCenter / sampleRate);
+        histRe = new float[2 * nTaps];
+        histIm = new float[2 * nTaps];
+        reset();
+
+        fLogger.debug("### decimation=%d rate=%d mark=%.1f space=%.1f taps=%d",
+                decimation, outputRate, markF, spaceF, nTaps);
+    }
+
+    /**
+     * Chooses the decimation factor
+     * The largest divisor of the sample rate which keeps the output rate
+     * above the tone span limit, the image guard and MIN_SAMPLES_PER_BIT samples per bit
+     * @param sampleRate    input sample rate
+     * @param fMark         mark frequency
+     * @param fSpace        space frequency
+     * @param bandWidth     filter bandwidth of the demodulator
+     * @param dataRate      data rate (baud)
+     * @return decimation factor (1 if decimation makes no sense)
+     */
+    static int chooseDecimation(int sampleRate, float fMark, float fSpace, float bandWidth, float dataRate) {
+        float shift = Math.abs(fMark - fSpace);
+        float minRate = Math.max(RATE_TO_SPAN * (shift + bandWidth),
+                MIN_SAMPLES_PER_BIT * dataRate);
+        minRate = Math.max(minRate, 2.0f * (shift + IMAGE_GUARD_BITS * dataRate));
+        int d = 1;
+        for (int i = 2; sampleRate / i >= minRate; i++) {
+            if (sampleRate % i == 0) {
+                d = i;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Drops the state, the next sample is processed as the first one of the stream
+     */
+    public void reset() {
+        mixCos = 1.0;
+        mixSin = 0.0;
+        mixN = 0;
+        Arrays.fill(histRe, 0.0f);
+        Arrays.fill(histIm, 0.0f);
+        histPos = 0;
+        phase = 0;
+        nOut = 0;
+    }
+
+    /**
+     * Channelizes input samples
+     * @param in      input samples
+     * @param pIn     position of the first input sample
+     * @param nIn     number of input samples
+     * @param out     output samples
+     * @param pOut    position to store the first output sample to
+     * @return  the number of output samples stored (there is room for nIn/decimation + 1 required)
+     */
+    public int process(FloatBuffer in, int pIn, int nIn, FloatBuffer out, int pOut) {
+        int n = 0;
+        for (int i = 0; i < nIn; i++) {
+            float x = in.get(pIn + i);
+            float re = (float) (x * mixCos);
+            float im = (float) (x * mixSin);
+            histRe[histPos] = histRe[histPos + nTaps] = re;
+            histIm[histPos] = histIm[histPos + nTaps] = im;
+            if (++histPos == nTaps) {
+                histPos = 0;
+            }
+            double c = mixCos * cosD - mixSin * sinD;
+            mixSin = mixCos * sinD + mixSin * cosD;
+            mixCos = c;
+            if (++mixN == 1024) {
+                // keep the rotator on the unit circle
+                double norm = 1.0 / Math.sqrt(mixCos * mixCos + mixSin * mixSin);
+                mixCos *= norm;
+                mixSin *= norm;
+                mixN = 0;
+            }
+
+            if (++phase < decimation) {
+                continue;
+            }
+            phase = 0;
+            // the newest nTaps samples are histPos .. histPos + nTaps - 1 (oldest first)
+            float yRe = 0.0f;
+            float yIm = 0.0f;
+            for (int k = 0; k < nTaps; k++) {
+                float t = taps[k];
+                yRe += t * histRe[histPos + k];
+                yIm += t * histIm[histPos + k];
+            }
+            /*
+             * Shift to fIf = outputRate/4: multiply by j^nOut and take the real part
+             */
+            float y;
+            switch (nOut & 3) {
+                case 0:  y = yRe;  break;
+                case 1:  y = -yIm; break;
+                case 2:  y = -yRe; break;
+                default: y = yIm;  break;
+            }
+            nOut++;
+            out.put(pOut + n++, y);
+        }
+        return n;
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public float getMarkF() {
+        return markF;
+    }
+
+    public float getSpaceF() {
+        return spaceF;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * minimodem4j
+ * FftToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static minimodem.fsk.Fsk.bandMag;
+
+/**
+ * Tone analyzer based on the full FFT of the window
+ * (the original minimodem approach)
+ */
+public class FftToneAnalyzer implements IToneAnalyzer {
+    private final int fftSize;
+    private final FloatFFT_1D fft;
+    private final float[] fftbuf;
+
+    private int bMark;
+    private int bSpace;
+
+    /**
+     * Constructor
+     * @param fftSize   FFT size
+     * @param fft       FFT instance of fftSize
+     */
+    public FftToneAnalyzer(int fftSize, FloatFFT_1D fft) {
+        this.fftSize = fftSize;
+        this.fft = fft;
+        this.fftbuf = new float[fftSize*2];
+    }
+
+    public void setBands(int bMark, int bSpace) {
+        this.bMark = bMark;
+        this.bSpace = bSpace;
+    }
+
+    public void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp) {
+        sampleBuf.position(pSamples);
+        sampleBuf.get(fftbuf, 0, nSamples);
+        Arrays.fill(fftbuf, nSamples, fftbuf.length, 0.0f);
+        fft.realForwardFull(fftbuf);
+
+        float magScalar = 2.0f / nSamples;
+        magsOutp[0] = bandMag(fftbuf, bMark, magScalar);
+        magsOutp[1] = bandMag(fftbuf, bSpace, magScalar);
+    }
+}
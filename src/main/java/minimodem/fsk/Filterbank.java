@@ -0,0 +1,150 @@
+/*
+ * minimodem4j
+ * Filterbank.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Sliding DFT filterbank shared by several demodulators
+ * Every registered band is tracked with running (phase referenced) accumulators
+ * (see SlidingDftToneAnalyzer), and all bands are updated in one pass over the
+ * sample buffer. So N channels demodulated from the same sample stream cost
+ * one pass of N*2 cheap per-sample updates, and every bit window of every
+ * channel is then just a couple of accumulator reads.
+ * The accumulators are valid while the sample buffer contents stay the same,
+ * the owner of the sample buffer shall call invalidate() on every update.
+ */
+public class Filterbank {
+    private final int fftSize;
+    private final double[] cosTable;
+    private final double[] sinTable;
+
+    private int nSlots = 0;
+    private int[] bands = new int[0];
+    private int[] idx = new int[0];
+    /*
+     * Running accumulators, one per slot: [2*j] - real part, [2*j+1] - imaginary part
+     * accN -- number of samples accumulated so far (from the buffer start)
+     */
+    private double[][] acc = new double[0][];
+    private int accCapacity = 0;
+    private int accN = 0;
+
+    /**
+     * Constructor
+     * @param fftSize   the size of (virtual) DFT
+     */
+    public Filterbank(int fftSize) {
+        this.fftSize = fftSize;
+        cosTable = new double[fftSize];
+        sinTable = new double[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            cosTable[i] = Math.cos(2.0 * Math.PI * i / fftSize);
+            sinTable[i] = -Math.sin(2.0 * Math.PI * i / fftSize);
+        }
+    }
+
+    /**
+     * Registers the band to track
+     * @param band  band
+     * @return  slot of the band (the same slot for the same band)
+     */
+    int addBand(int band) {
+        for (int s = 0; s < nSlots; s++) {
+            if (bands[s] == band) {
+                return s;
+            }
+        }
+        bands = Arrays.copyOf(bands, nSlots + 1);
+        idx = Arrays.copyOf(idx, nSlots + 1);
+        acc = Arrays.copyOf(acc, nSlots + 1);
+        bands[nSlots] = band;
+        acc[nSlots] = new double[2 * (accCapacity + 1)];
+        invalidate();
+        return nSlots++;
+    }
+
+    /**
+     * Drops the accumulators
+     * Shall be called whenever the contents of the sample buffer change
+     */
+    public void invalidate() {
+        accN = 0;
+        Arrays.fill(idx, 0);
+    }
+
+    /**
+     * Calculates the magnitudes of two bands over the window
+     * @param sampleBuf  Sample buffer
+     * @param pSamples   Starting position to analyze
+     * @param nSamples   Number of samples to analyze
+     * @param slotMark   slot of the mark band
+     * @param slotSpace  slot of the space band
+     * @param magsOutp   [0] <-- mark magnitude
+     *                   [1] <-- space magnitude
+     */
+    void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, int slotMark, int slotSpace, float[] magsOutp) {
+        int pEnd = pSamples + nSamples;
+        if (pEnd > accN) {
+            accumulate(sampleBuf, pEnd);
+        }
+        double magScalar = 2.0 / nSamples;
+        magsOutp[0] = (float) (windowMag(acc[slotMark], pSamples, pEnd) * magScalar);
+        magsOutp[1] = (float) (windowMag(acc[slotSpace], pSamples, pEnd) * magScalar);
+    }
+
+    /**
+     * Extends running accumulators of all bands up to the given sample
+     * @param sampleBuf  Sample buffer
+     * @param pEnd       the position after the last sample to accumulate
+     */
+    private void accumulate(FloatBuffer sampleBuf, int pEnd) {
+        if (accCapacity < pEnd) {
+            int capacity = Math.max(pEnd, sampleBuf.capacity());
+            for (int s = 0; s < nSlots; s++) {
+                acc[s] = Arrays.copyOf(acc[s], 2 * (capacity + 1));
+            }
+            accCapacity = capacity;
+        }
+        if (accN == 0) {
+            for (int s = 0; s < nSlots; s++) {
+                acc[s][0] = acc[s][1] = 0.0;
+            }
+        }
+        for (int j = accN; j < pEnd; j++) {
+            double x = sampleBuf.get(j);
+            for (int s = 0; s < nSlots; s++) {
+                double[] a = acc[s];
+                int i = idx[s];
+                a[2*j+2] = a[2*j] + x * cosTable[i];
+                a[2*j+3] = a[2*j+1] + x * sinTable[i];
+                i += bands[s];
+                if (i >= fftSize) {
+                    i -= fftSize;
+                }
+                idx[s] = i;
+            }
+        }
+        accN = pEnd;
+    }
+
+    /**
+     * Calculates window bin magnitude from running accumulator
+     * @param acc    running accumulator
+     * @param pFrom  the first sample of the window
+     * @param pTo    the position after the last sample of the window
+     * @return       magnitude (not normalized)
+     */
+    private static double windowMag(double[] acc, int pFrom, int pTo) {
+        double re = acc[2*pTo] - acc[2*pFrom];
+        double im = acc[2*pTo+1] - acc[2*pFrom+1];
+        return Math.sqrt(re*re + im*im);
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * minimodem4j
+ * FilterbankToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Tone analyzer reading mark and space bands from a shared filterbank
+ * The filterbank is invalidated by its owner, so invalidate() is a noop here:
+ * otherwise every channel would drop the work shared with the others.
+ */
+class FilterbankToneAnalyzer implements IToneAnalyzer {
+    private final Filterbank filterbank;
+    private int slotMark;
+    private int slotSpace;
+
+    /**
+     * Constructor
+     * @param filterbank  shared filterbank
+     */
+    FilterbankToneAnalyzer(Filterbank filterbank) {
+        this.filterbank = filterbank;
+    }
+
+    public void setBands(int bMark, int bSpace) {
+        slotMark = filterbank.addBand(bMark);
+        slotSpace = filterbank.addBand(bSpace);
+    }
+
+    public void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp) {
+        filterbank.analyze(sampleBuf, pSamples, nSamples, slotMark, slotSpace, magsOutp);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * minimodem4j
+ * FrameResult.java
+ */
+package minimodem.fsk;
+
+/**
+ * Frame analysis result
+ * Mutable holder, intended to be allocated once and reused for every frame
+ */
+public class FrameResult {
+    float confidence;
+    long bits;
+    float amplitude;
+    int frameStart;
+
+    /**
+     * Sets failure values
+     */
+    void reset() {
+        confidence = 0.0f;
+        bits = 0L;
+        amplitude = 0.0f;
+        frameStart = 0;
+    }
+
+    /**
+     * Copies another result
+     * @param other result to copy
+     */
+    public void set(FrameResult other) {
+        confidence = other.confidence;
+        bits = other.bits;
+        amplitude = other.amplitude;
+        frameStart = other.frameStart;
+    }
+
+    /**
+     * @return Сonfidence value [0.0 to INFINITY]
+     */
+    public float getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * @return Bits identified
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * @return Amplitude
+     */
+    public float getAmplitude() {
+        return amplitude;
+    }
+
+    /**
+     * @return frame start position in the buffer
+     */
+    public int getFrameStart() {
+        return frameStart;
+    }
+}
@@ -10,6 +10,9 @@ import org.apache.logging.log4j.Logger;
 import org.jtransforms.fft.FloatFFT_1D;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class Fsk {
     private static final Logger fLogger = LogManager.getFormatterLogger("Fsk");
@@ -28,13 +31,74 @@ public class Fsk {
 
     private int   bMark;
     private int   bSpace;
+    private final double toneMark;     // mark frequency, relative to the sample rate
+    private final double toneSpace;    // space frequency, relative to the sample rate
+    private boolean tonesByBand = false;   // tones were set by fskSetTonesByBandshift
 
     private FloatFFT_1D fft;
+    private IToneAnalyzer toneAnalyzer;
+    private ToneAnalyzerType analyzerType;
+    private ToneMagCache magCache = null;
+    private boolean sampleBufTracked = false;
+    private int sampleBufGeneration = 0;
+
+    /*
+     * Parallel frame search: the pool, per-worker demodulators (each one has
+     * its own FFT instance and scratch buffers) and per-candidate results
+     */
+    private ForkJoinPool parallelPool = null;
+    private Fsk[] workers;
+    private int workerGeneration = -1;
+    private int[] tryTs = new int[0];
+    private FrameResult[] tryResults = new FrameResult[0];
+
+    /*
+     * Scratch buffers, reused by every call to avoid per-bit garbage
+     */
+    private float[] fftbuf;
+    private final float[] toneMags = new float[2];
+    private final int[] bitValues = new int[64];
+    private final float[] bitSigMags = new float[64];
+    private final float[] bitNoiseMags = new float[64];
+    private final FrameResult tryRes = new FrameResult();
 
     public Fsk(float sampleRate, float fMark, float fSpace, float filterBw) {
+        this(sampleRate, fMark, fSpace, filterBw, ToneAnalyzerType.FFT);
+    }
+
+    /**
+     * Constructor
+     * @param sampleRate    sample rate
+     * @param fMark         mark frequency
+     * @param fSpace        space frequency
+     * @param filterBw      filter bandwidth
+     * @param analyzerType  tone analyzer to use for bit analysis
+     */
+    public Fsk(float sampleRate, float fMark, float fSpace, float filterBw, ToneAnalyzerType analyzerType) {
+        this(sampleRate, fMark, fSpace, filterBw, analyzerType, null);
+    }
+
+    /**
+     * Channel constructor
+     * Creates demodulator which reads mark and space bands from the filterbank
+     * shared with the other channels of the same sample stream
+     * @param sampleRate    sample rate
+     * @param fMark         mark frequency
+     * @param fSpace        space frequency
+     * @param filterBw      filter bandwidth
+     * @param filterbank    shared filterbank (of the same FFT size)
+     */
+    public Fsk(float sampleRate, float fMark, float fSpace, float filterBw, Filterbank filterbank) {
+        this(sampleRate, fMark, fSpace, filterBw, ToneAnalyzerType.SDFT, filterbank);
+    }
+
+    private Fsk(float sampleRate, float fMark, float fSpace, float filterBw,
+                ToneAnalyzerType analyzerType, Filterbank filterbank) {
       //  this.sampleRate = sampleRate;
 
         this.bandWidth = filterBw;
+        toneMark = fMark / sampleRate;
+        toneSpace = fSpace / sampleRate;
 
         float fftHalfBw = bandWidth / 2.0f;
         fftSize = (int)((sampleRate + fftHalfBw) / bandWidth);
@@ -47,11 +111,48 @@ public class Fsk {
             return;
         }
         fft = new FloatFFT_1D(fftSize);
+        fftbuf = new float[fftSize*2];
+        this.analyzerType = analyzerType;
+        if (filterbank != null) {
+            if (filterbank.getFftSize() != fftSize) {
+                fLogger.error("filterbank fftsize=%d does not match fftsize=%d", filterbank.getFftSize(), fftSize);
+                return;
+            }
+            toneAnalyzer = new FilterbankToneAnalyzer(filterbank);
+        } else {
+            toneAnalyzer = analyzerType.create(fftSize, fft);
+        }
+        toneAnalyzer.setBands(bMark, bSpace);
+        toneAnalyzer.setTones(toneMark, toneSpace);
 
-        fLogger.debug("### b_mark=%d b_space=%d fftsize=%d", bMark, bSpace, fftSize);
+        fLogger.debug("### b_mark=%d b_space=%d fftsize=%d analyzer=%s", bMark, bSpace, fftSize,
+                filterbank != null ? "filterbank" : analyzerType);
 
     }
 
+    /**
+     * Worker constructor
+     * Creates demodulator with the same configuration, but its own FFT and scratch buffers
+     * @param master demodulator to copy configuration from
+     */
+    private Fsk(Fsk master) {
+        bandWidth = master.bandWidth;
+        fftSize = master.fftSize;
+        nBands = master.nBands;
+        bMark = master.bMark;
+        bSpace = master.bSpace;
+        toneMark = master.toneMark;
+        toneSpace = master.toneSpace;
+        analyzerType = master.analyzerType;
+        fft = new FloatFFT_1D(fftSize);
+        fftbuf = new float[fftSize*2];
+        toneAnalyzer = analyzerType.create(fftSize, fft);
+        toneAnalyzer.setBands(bMark, bSpace);
+        if (!master.tonesByBand) {
+            toneAnalyzer.setTones(toneMark, toneSpace);
+        }
+    }
+
     public void fskSetTonesByBandshift(int bMark, int bShift) {
         assert bShift != 0;
         assert bMark < nBands;
@@ -62,79 +163,136 @@ public class Fsk {
 
         this.bMark = bMark;
         this.bSpace = bSpace;
+        tonesByBand = true;
+        toneAnalyzer.setBands(bMark, bSpace);
+        if (magCache != null) {
+            magCache.clear();
+        }
+    }
+
+    /**
+     * Enables cache of bit window magnitudes
+     * Requires sample buffer updates to be reported with fskSampleBufUpdate
+     * @param sampleBufSize   sample buffer size
+     */
+    public void fskEnableCache(int sampleBufSize) {
+        magCache = new ToneMagCache(sampleBufSize);
+    }
+
+    /**
+     * Enables parallel frame search
+     * Candidate frame positions of exhaustive scans (tryConfidenceSearchLimit is
+     * POSITIVE_INFINITY, i.e.: the refine pass) are evaluated on the pool, one
+     * worker demodulator per pool thread.
+     * @param pool  ForkJoinPool to run on, null to disable parallel search
+     */
+    public void fskEnableParallel(ForkJoinPool pool) {
+        parallelPool = pool;
+        if (pool != null) {
+            workers = new Fsk[pool.getParallelism()];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Fsk(this);
+            }
+            workerGeneration = -1;
+        } else {
+            workers = null;
+        }
+    }
+
+    /**
+     * Notifies the demodulator that the sample buffer is (re)started from scratch
+     */
+    public void fskSampleBufReset() {
+        sampleBufGeneration++;
+        toneAnalyzer.invalidate();
+        if (magCache != null) {
+            magCache.clear();
+            magCache.update(0, 0);
+        }
+    }
+
+    /**
+     * Notifies the demodulator about sample buffer update
+     * Once called, the demodulator relies on these notifications instead of
+     * assuming that the buffer may change between fskFindFrame calls
+     * @param shift   number of samples the buffer was shifted left by
+     * @param nValid  number of valid samples in the buffer after the update
+     */
+    public void fskSampleBufUpdate(int shift, int nValid) {
+        sampleBufTracked = true;
+        sampleBufGeneration++;
+        toneAnalyzer.invalidate();
+        if (magCache != null) {
+            magCache.update(shift, nValid);
+        }
     }
 
     /**
      * Carrier detector
      * @param sampleBuf          Sample buffer
-     * @param nSamples           Position of the first sample to analyze
+     * @param pSamples           Position of the first sample to analyze
      * @param nSamples           Number of samples to analyze
      * @param minMagThreshold    Carrier threshold
      * @return    Carrier band or -1 if no carrier was detected
      */
     public int fskDetectCarrier(FloatBuffer sampleBuf, int pSamples, int nSamples, float minMagThreshold) {
 
-        float[] fftbuf = new float[fftSize*2];
         sampleBuf.position(pSamples);
         sampleBuf.get(fftbuf, 0, nSamples);
+        Arrays.fill(fftbuf, nSamples, fftbuf.length, 0.0f);
         fft.realForwardFull(fftbuf);
 
         float magScalar = 1.0f / nSamples / 2.0f;
-        float maxMag = 0.0f;
-        int maxMagBand = -1;
-        int i = 1; /* start detection at the first non-DC band */
-        for(; i < nBands; i++) {
-            float mag = bandMag(fftbuf, i, magScalar);
-            if(mag < minMagThreshold) {
-                continue;
-            }
-            if(maxMag < mag) {
-                maxMag = mag;
-                maxMagBand = i;
-            }
-        }
-        if(maxMagBand < 0) {
-            return -1;
+        /*
+         * Compare squared magnitudes against the squared threshold, so there
+         * is no sqrt per band:  mag < thr  <=>  re^2+im^2 < (thr/magScalar)^2
+         */
+        float powThreshold = 0.0f;
+        if (minMagThreshold > 0.0f) {
+            powThreshold = minMagThreshold / magScalar;
+            powThreshold *= powThreshold;
         }
-        return maxMagBand;
+        /* start detection at the first non-DC band */
+        return bandPowArgMax(fftbuf, 1, nBands, powThreshold);
     }
 
     /**
      * Bit analizer
+     * Stores signal and noise magnitudes to bitSigMags[bitnum] and bitNoiseMags[bitnum]
      * @param sampleBuf     Sample buffer
      * @param pSamples      Starting position to analyze
      * @param nSamples      Number of samples to analyze
-     * @param pre           Preamble for debug output
-     * @return  Number[3]   [0] -->  Bit value (1/0): integer
-     *                      [1] -->  Signal magnitude: float
-     *                      [2] -->  Noise magnitude:  float
+     * @param bitnum        Bit number in the frame
+     * @return  Bit value (1/0)
      */
-    private Number[] fskBitAnalyze(FloatBuffer sampleBuf, int pSamples, int nSamples, String pre) {
-        Number[] res = new Number[3];
+    private int fskBitAnalyze(FloatBuffer sampleBuf, int pSamples, int nSamples, int bitnum) {
+        int bit;
 
-        float[] fftbuf = new float[fftSize*2];
-        sampleBuf.position(pSamples);
-        sampleBuf.get(fftbuf, 0, nSamples);
-        fft.realForwardFull(fftbuf);
-
-        float magScalar = 2.0f / nSamples;
-        float magMark = bandMag(fftbuf, bMark, magScalar);
-        float magSpace = bandMag(fftbuf, bSpace, magScalar);
+        if (magCache == null || !magCache.lookup(pSamples, nSamples, toneMags)) {
+            toneAnalyzer.analyze(sampleBuf, pSamples, nSamples, toneMags);
+            if (magCache != null) {
+                magCache.store(pSamples, nSamples, toneMags);
+            }
+        }
+        float magMark = toneMags[0];
+        float magSpace = toneMags[1];
         // mark==1, space==0
         if(magMark > magSpace) {
-            res[0] = 1;                 // bitOutp
-            res[1] = magMark;           // bitSignalMagOutp
-            res[2] = magSpace;          // bitNoiseMagOutp
+            bit = 1;
+            bitSigMags[bitnum] = magMark;
+            bitNoiseMags[bitnum] = magSpace;
         } else {
-            res[0] = 0;                 // bitOutp
-            res[1] = magSpace;          // bitNoiseMagOutp
-            res[2] = magMark;           // bitSignalMagOutp
+            bit = 0;
+            bitSigMags[bitnum] = magSpace;
+            bitNoiseMags[bitnum] = magMark;
         }
-        fLogger.debug("%s\t%.2f  %.2f  %s  bit=%d sig=%.2f noise=%.2f", pre, magMark, magSpace,
-                magMark > magSpace ? "mark      ":"     space",
-                res[0], res[1], res[2]);
-
-        return res;
+        if (fLogger.isDebugEnabled()) {
+            fLogger.debug(" bit# %2d @ %7d: \t%.2f  %.2f  %s  bit=%d sig=%.2f noise=%.2f", bitnum, pSamples,
+                    magMark, magSpace,
+                    magMark > magSpace ? "mark      " : "     space",
+                    bit, bitSigMags[bitnum], bitNoiseMags[bitnum]);
+        }
+        return bit;
     }
 
     /**
@@ -144,26 +302,19 @@ public class Fsk {
      * @param samplesPerBit             samples per bit
      * @param nBits                     number of bits expected
      * @param expectBitsString          expected bits mask
-     * @return  Number[3]   [0] -->  Сonfidence value [0.0 to INFINITY]: float
-     *                      [1] -->  Bit value (1/0): integer
-     *                      [2] -->  Amplitude:  float
+     * @param res                       [out] confidence, bits and amplitude (zeroes on failure)
      */
-        private Number[] fskFrameAnalyze(FloatBuffer sampleBuf,
-                                     int pSamples,
-                                     float samplesPerBit,
-                                     int nBits,
-                                     byte[] expectBitsString) {
+    private void fskFrameAnalyze(FloatBuffer sampleBuf,
+                                 int pSamples,
+                                 float samplesPerBit,
+                                 int nBits,
+                                 byte[] expectBitsString,
+                                 FrameResult res) {
 
-        Number[] res = new Number[3];
         // Initialize with failure return values
-        res[0] = 0.0f;              // confidence
-        res[1] = 0L;                // bitsOutp
-        res[2] = 0.0f;              // amplOutp;
+        res.reset();
 
         int bitNSamples = (int)(samplesPerBit + 0.5f);
-        int[] bitValues = new int[64];
-        float[] bitSigMags = new float[64];
-        float[] bitNoiseMags = new float[64];
         int bitBeginSample;
         int bitnum;
 
@@ -175,25 +326,20 @@ public class Fsk {
             assert expectBitsString[bitnum] == '1' || expectBitsString[bitnum] == '0';
 
             bitBeginSample = pSamples + (int) (samplesPerBit * bitnum + 0.5f);
-            String pre = String.format(" bit# %2d @ %7d: ", bitnum, bitBeginSample);
-
-            Number[] baRes = fskBitAnalyze(sampleBuf,bitBeginSample, bitNSamples, pre);
-            bitValues[bitnum] = (int) baRes[0];
-            bitSigMags[bitnum] = (float) baRes[1];
-            bitNoiseMags[bitnum] = (float) baRes[2];
+            bitValues[bitnum] = fskBitAnalyze(sampleBuf, bitBeginSample, bitNSamples, bitnum);
 
             if (expectBitsString[bitnum] - '0' != bitValues[bitnum]) {
-                return res; /* does not match expected; abort frame analysis. */
+                return; /* does not match expected; abort frame analysis. */
             }
 
             if (bitSigMags[bitnum] / bitNoiseMags[bitnum] < FSK_MIN_BIT_SNR) {
-                return res;
+                return;
             }
 
             // Performance hack: reject frame early if sig mag isn't even half
             // of FSK_MIN_MAGNITUDE
             if (bitSigMags[bitnum] < FSK_MIN_MAGNITUDE / 2.0) {
-                return res; // too weak; abort frame analysis
+                return; // too weak; abort frame analysis
             }
         }
         /* pass #2 - process only the dontcare ('d') expect_bits */
@@ -202,14 +348,10 @@ public class Fsk {
                 continue;
             }
             bitBeginSample = pSamples + (int)(samplesPerBit * bitnum + 0.5f);
-            String pre = String.format(" bit# %2d @ %7d: ", bitnum, bitBeginSample);
-            Number[] resBA = fskBitAnalyze(sampleBuf, bitBeginSample, bitNSamples, pre);
-            bitValues[bitnum] = (int) resBA[0];
-            bitSigMags[bitnum] = (float) resBA[1];
-            bitNoiseMags[bitnum] = (float) resBA[2];
+            bitValues[bitnum] = fskBitAnalyze(sampleBuf, bitBeginSample, bitNSamples, bitnum);
 
             if(bitSigMags[bitnum] / bitNoiseMags[bitnum] < FSK_MIN_BIT_SNR) {
-                return res;
+                return;
             }
         }
 
@@ -260,11 +402,13 @@ public class Fsk {
 
         divergence /= nBits;
         float avgBitNoise = totalBitNoise / nBits;
-        fLogger.debug("    divg=%.3f snr=%.3f avg{bit_sig=%.3f bit_noise=%.3f(%s)}",
+        if (fLogger.isDebugEnabled()) {
+            fLogger.debug("    divg=%.3f snr=%.3f avg{bit_sig=%.3f bit_noise=%.3f(%s)}",
                     divergence, snr, avgBitSig, avgBitNoise, avgBitNoise == 0.0 ? "zero" : "non-zero");
+        }
 
         if(avgBitSig < FSK_MIN_MAGNITUDE) {
-            return res; // too weak; reject frame
+            return; // too weak; reject frame
         }
 
         // Frame confidence is the frame ( SNR * consistency )
@@ -276,12 +420,13 @@ public class Fsk {
         for(bitnum = 0; bitnum < nBits; bitnum++) {
             bitsOutp = bitsOutp | Integer.toUnsignedLong(bitValues[bitnum]) << bitnum;
         }
+        if (fLogger.isDebugEnabled()) {
             fLogger.debug("    frame algo=%d confidence=%f ampl=%f", CONFIDENCE_ALGO, confidence, avgBitSig);
+        }
 
-        res[0] = confidence;
-        res[1] = bitsOutp;
-        res[2] = avgBitSig;
-        return res;
+        res.confidence = confidence;
+        res.bits = bitsOutp;
+        res.amplitude = avgBitSig;
     }
 
     /**
@@ -293,25 +438,52 @@ public class Fsk {
      * @param tryStepNSamples           shift per try
      * @param tryConfidenceSearchLimit  confidence limit for a try
      * @param expectBitsString          expected bit mask
-     * @return  Number[4]   [0] -->  Сonfidence value [0.0 to INFINITY]: float
-     *                      [1] -->  Bits identified: long
-     *                      [2] -->  Amplitude:  float
-     *                      [3] -->  frame start position in the buffer:  int
+     * @param res                       [out] confidence, bits identified, amplitude and
+     *                                  frame start position in the buffer
+     * @return  res
      */
-    public Number[] fskFindFrame(FloatBuffer sampleBuf,
-                                 int frameNSamples,
-                                 int tryFirstSample,
-                                 int tryMaxNSamples,
-                                 int tryStepNSamples,
-                                 float tryConfidenceSearchLimit,
-                                 byte[] expectBitsString) {
-
-        Number[] res = new Number[4];
-        // Initialize with failure return values
-        res[0] = 0.0f;              // confidence
-        res[1] = 0L;                // bitsOutp
-        res[2] = 0.0f;              // amplOutp;
-        res[3] = 0;                 // frameStartOutp;
+    public FrameResult fskFindFrame(FloatBuffer sampleBuf,
+                                    int frameNSamples,
+                                    int tryFirstSample,
+                                    int tryMaxNSamples,
+                                    int tryStepNSamples,
+                                    float tryConfidenceSearchLimit,
+                                    byte[] expectBitsString,
+                                    FrameResult res) {
+        return fskFindFrame(sampleBuf, 0, frameNSamples, tryFirstSample, tryMaxNSamples, tryStepNSamples,
+                tryConfidenceSearchLimit, expectBitsString, res);
+    }
+
+    /**
+     * LOcates frame with optimal confidence
+     * Try positions are relative to pFrame, so several demodulators can scan
+     * the same sample buffer from different positions
+     * @param sampleBuf                 sample buffer
+     * @param pFrame                    position in the buffer the scan is relative to
+     * @param frameNSamples             samples in frame
+     * @param tryFirstSample            the first position to try
+     * @param tryMaxNSamples            maximum number of samples in try
+     * @param tryStepNSamples           shift per try
+     * @param tryConfidenceSearchLimit  confidence limit for a try
+     * @param expectBitsString          expected bit mask
+     * @param res                       [out] confidence, bits identified, amplitude and
+     *                                  frame start position relative to pFrame
+     * @return  res
+     */
+    public FrameResult fskFindFrame(FloatBuffer sampleBuf,
+                                    int pFrame,
+                                    int frameNSamples,
+                                    int tryFirstSample,
+                                    int tryMaxNSamples,
+                                    int tryStepNSamples,
+                                    float tryConfidenceSearchLimit,
+                                    byte[] expectBitsString,
+                                    FrameResult res) {
+
+        if (!sampleBufTracked) {
+            // the sample buffer contents may have changed since the previous call
+            toneAnalyzer.invalidate();
+        }
 
         int expectNBits = 0;
         while (expectBitsString[expectNBits]!=0 && expectNBits<64) {
@@ -323,9 +495,103 @@ public class Fsk {
         int bestT = 0;
         float bestC = 0.0f, bestA = 0.0f;
         long bestBits = 0;
-        // Scan the frame positions starting with the one try_first_sample,
-        // alternating between a step above that, a step below that, above, below,
-        // and so on, until we've scanned the whole try_max_nsamples range.
+        if (parallelPool != null && tryConfidenceSearchLimit == Float.POSITIVE_INFINITY) {
+            int nTries = findFrameParallel(sampleBuf, pFrame, samplesPerBit, tryFirstSample, tryMaxNSamples,
+                    tryStepNSamples, expectNBits, expectBitsString);
+            // Reduce in the scan order, so that ties resolve exactly as in sequential scan
+            for (int i = 0; i < nTries; i++) {
+                float c = tryResults[i].confidence;
+                if (bestC < c) {
+                    bestT = tryTs[i];
+                    bestC = c;
+                    bestA = tryResults[i].amplitude;
+                    bestBits = tryResults[i].bits;
+                }
+            }
+        } else {
+            // Scan the frame positions starting with the one try_first_sample,
+            // alternating between a step above that, a step below that, above, below,
+            // and so on, until we've scanned the whole try_max_nsamples range.
+            for (int j = 0; ; j++) {
+                int up = j % 2 != 0 ? 1 : -1;
+                int t = tryFirstSample + up * ((j + 1) / 2) * tryStepNSamples;
+                if (t >= tryMaxNSamples) {
+                    break;
+                }
+                if (t < 0) {
+                    continue;
+                }
+
+                if (fLogger.isDebugEnabled()) {
+                    fLogger.debug("try fsk_frame_analyze at t=%d", t);
+                }
+                fskFrameAnalyze(sampleBuf, pFrame + t, samplesPerBit, expectNBits, expectBitsString, tryRes);
+                float c = tryRes.confidence;
+                if (bestC < c) {
+                    bestT = t;
+                    bestC = c;
+                    bestA = tryRes.amplitude;
+                    bestBits = tryRes.bits;
+                    // If we find a frame with confidence > try_confidence_search_limit
+                    // quit searching.
+                    if (bestC >= tryConfidenceSearchLimit) {
+                        break;
+                    }
+                }
+            }
+        }
+        if (fLogger.isDebugEnabled()) {
+            /*
+             * FIXME? hardcoded chop off framing bits for debug
+             * Hmmm... we have now way to  distinguish between:
+             *     8-bit data with no start/stopbits == 8 bits
+             *     5-bit with prevstop+start+stop == 8 bits
+             */
+            byte byteChar = (expectNBits == 11) ?
+                    (byte) (bestBits >>> 2 & 0xFF) :
+                    (byte) (bestBits & 0xFF);
+            StringBuilder frm = new StringBuilder("FSK_FRAME bits='");
+            for (int j = 0; j < expectNBits; j++) {
+                frm.append((bestBits >>> j & 1) != 0 ? '1' : '0');
+            }
+            frm.append("' datum='").
+                    append((Character.isISOControl(byteChar) || Character.isSpaceChar(byteChar)) ? '.' : byteChar).
+                    append("'");
+            fLogger.debug("%s (0x%02x)   c=%f  a=%f  t=%d", frm.toString(), byteChar, bestC, bestA, bestT);
+        }
+
+        res.confidence = bestC;
+        res.bits = bestBits;
+        res.amplitude = bestA;
+        res.frameStart = bestT;
+
+        return res;
+    }
+
+    /**
+     * Evaluates all candidate frame positions on the parallel pool
+     * Candidates are enumerated in the same alternating up/down order as the
+     * sequential scan and split into contiguous chunks, one chunk per worker.
+     * @param sampleBuf                 sample buffer
+     * @param pFrame                    position in the buffer the scan is relative to
+     * @param samplesPerBit             samples per bit
+     * @param tryFirstSample            the first position in the buffer to try
+     * @param tryMaxNSamples            maximum number of samples in try
+     * @param tryStepNSamples           shift per try
+     * @param expectNBits               number of bits expected
+     * @param expectBitsString          expected bit mask
+     * @return  the number of candidates; positions are stored to tryTs and
+     *          results to tryResults in scan order
+     */
+    private int findFrameParallel(FloatBuffer sampleBuf,
+                                  int pFrame,
+                                  float samplesPerBit,
+                                  int tryFirstSample,
+                                  int tryMaxNSamples,
+                                  int tryStepNSamples,
+                                  int expectNBits,
+                                  byte[] expectBitsString) {
+        int nTries = 0;
         for (int j = 0; ; j++) {
             int up = j % 2 != 0 ? 1 : -1;
             int t = tryFirstSample + up * ((j + 1) / 2) * tryStepNSamples;
@@ -335,48 +601,47 @@ public class Fsk {
             if (t < 0) {
                 continue;
             }
-
-            fLogger.debug("try fsk_frame_analyze at t=%d", t);
-            Number[] resFA = fskFrameAnalyze(sampleBuf, t, samplesPerBit, expectNBits, expectBitsString);
-            float c = (float) resFA[0];
-            long bitsOut = (long) resFA[1];
-            float amplOut = (float) resFA[2];
-            if (bestC < c) {
-                bestT = t;
-                bestC = c;
-                bestA = amplOut;
-                bestBits = bitsOut;
-                // If we find a frame with confidence > try_confidence_search_limit
-                // quit searching.
-                if (bestC >= tryConfidenceSearchLimit) {
-                    break;
+            if (nTries == tryTs.length) {
+                int n = Math.max(2 * nTries, 16);
+                tryTs = Arrays.copyOf(tryTs, n);
+                tryResults = Arrays.copyOf(tryResults, n);
+                for (int i = nTries; i < n; i++) {
+                    tryResults[i] = new FrameResult();
                 }
             }
+            tryTs[nTries++] = t;
         }
-        /*
-         * FIXME? hardcoded chop off framing bits for debug
-         * Hmmm... we have now way to  distinguish between:
-         *     8-bit data with no start/stopbits == 8 bits
-         *     5-bit with prevstop+start+stop == 8 bits
-         */
-        byte byteChar = (expectNBits==11)?
-                    (byte) (bestBits >>> 2 & 0xFF):
-                    (byte) (bestBits & 0xFF);
-        StringBuilder frm = new StringBuilder("FSK_FRAME bits='");
-        for (int j = 0; j < expectNBits; j++) {
-                frm.append((bestBits >>> j & 1) != 0 ? '1' : '0');
-        }
-        frm.append("' datum='").
-                    append((Character.isISOControl(byteChar) || Character.isSpaceChar(byteChar)) ? '.' : byteChar).
-                    append("'");
-        fLogger.debug("%s (0x%02x)   c=%f  a=%f  t=%d", frm.toString(), byteChar, bestC, bestA, bestT);
-
-        res[0] = bestC;
-        res[1] = bestBits;
-        res[2] = bestA;
-        res[3] = bestT;
 
-        return res;
+        boolean invalidate = !sampleBufTracked || workerGeneration != sampleBufGeneration;
+        workerGeneration = sampleBufGeneration;
+        int nWorkers = Math.min(workers.length, nTries);
+        int chunk = (nTries + nWorkers - 1) / Math.max(nWorkers, 1);
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[nWorkers];
+        for (int w = 0; w < nWorkers; w++) {
+            Fsk worker = workers[w];
+            int from = w * chunk;
+            int to = Math.min(from + chunk, nTries);
+            if (worker.bMark != bMark || worker.bSpace != bSpace) {
+                worker.bMark = bMark;
+                worker.bSpace = bSpace;
+                worker.toneAnalyzer.setBands(bMark, bSpace);
+            }
+            if (invalidate) {
+                worker.toneAnalyzer.invalidate();
+            }
+            // every worker needs its own buffer position
+            FloatBuffer workerBuf = sampleBuf.duplicate();
+            tasks[w] = parallelPool.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    worker.fskFrameAnalyze(workerBuf, pFrame + tryTs[i], samplesPerBit,
+                            expectNBits, expectBitsString, tryResults[i]);
+                }
+            });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return nTries;
     }
 
     /**
@@ -396,6 +661,32 @@ public class Fsk {
         return mag;
     }
 
+    /**
+     * Finds the band with maximum power which is not below the threshold
+     * @param cplr          2*n representation of complex array
+     *                      real(k) <--- cplr[2*k]
+     *                      img[k]  <--- cplir[2*k+1]
+     * @param fromBand      the first band to check
+     * @param toBand        the band after the last one to check
+     * @param powThreshold  squared magnitude threshold (not normalized)
+     * @return  the band with maximum power (the first one on ties),
+     *          -1 if all bands are below the threshold
+     */
+    static int bandPowArgMax(float[] cplr, int fromBand, int toBand, float powThreshold) {
+        float maxPow = 0.0f;
+        int maxPowBand = -1;
+        for (int i = fromBand; i < toBand; i++) {
+            float re = cplr[2*i];
+            float im = cplr[2*i+1];
+            float pow = re*re + im*im;
+            if (pow >= powThreshold && maxPow < pow) {
+                maxPow = pow;
+                maxPowBand = i;
+            }
+        }
+        return maxPowBand;
+    }
+
     public int getFftSize() {
         return fftSize;
     }
@@ -408,4 +699,8 @@ public class Fsk {
         return bMark;
     }
 
+    public int getbSpace() {
+        return bSpace;
+    }
+
 }
@@ -0,0 +1,63 @@
+/*
+ * minimodem4j
+ * GoertzelToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Tone analyzer based on Goertzel algorithm
+ * Computes only the two DFT bins which are actually used (mark and space)
+ * instead of the full FFT of the window.
+ * The window is treated exactly as the FFT one: nSamples samples, zero padded
+ * up to fftSize, so the magnitudes match the FFT magnitudes.
+ */
+public class GoertzelToneAnalyzer implements IToneAnalyzer {
+    private final int fftSize;
+
+    private double coeffMark;
+    private double coeffSpace;
+
+    /**
+     * Constructor
+     * @param fftSize   the size of (virtual) DFT
+     */
+    public GoertzelToneAnalyzer(int fftSize) {
+        this.fftSize = fftSize;
+    }
+
+    public void setBands(int bMark, int bSpace) {
+        coeffMark = 2.0 * Math.cos(2.0 * Math.PI * bMark / fftSize);
+        coeffSpace = 2.0 * Math.cos(2.0 * Math.PI * bSpace / fftSize);
+    }
+
+    public void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp) {
+        double m1 = 0.0, m2 = 0.0;
+        double s1 = 0.0, s2 = 0.0;
+        for (int i = pSamples; i < pSamples + nSamples; i++) {
+            double x = sampleBuf.get(i);
+            double m0 = x + coeffMark * m1 - m2;
+            m2 = m1;
+            m1 = m0;
+            double s0 = x + coeffSpace * s1 - s2;
+            s2 = s1;
+            s1 = s0;
+        }
+        double magScalar = 2.0 / nSamples;
+        magsOutp[0] = (float) (goertzelMag(m1, m2, coeffMark) * magScalar);
+        magsOutp[1] = (float) (goertzelMag(s1, s2, coeffSpace) * magScalar);
+    }
+
+    /**
+     * Calculates bin magnitude from the final Goertzel state
+     * @param s1     s[N-1]
+     * @param s2     s[N-2]
+     * @param coeff  2*cos(w)
+     * @return       magnitude (not normalized)
+     */
+    private static double goertzelMag(double s1, double s2, double coeff) {
+        double pow = s1*s1 + s2*s2 - coeff*s1*s2;
+        return pow > 0.0 ? Math.sqrt(pow) : 0.0;
+    }
+}
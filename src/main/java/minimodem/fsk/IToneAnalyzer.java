@@ -0,0 +1,46 @@
+/*
+ * minimodem4j
+ * IToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Mark/space tone magnitude analyzer interface
+ * Computes the magnitudes of the two FSK tones over a window of samples
+ */
+public interface IToneAnalyzer {
+    /**
+     * Sets the bands to analyze
+     * @param bMark   mark band
+     * @param bSpace  space band
+     */
+    void setBands(int bMark, int bSpace);
+
+    /**
+     * Sets the exact tones (noop for the analyzers bound to DFT bins)
+     * @param fMark   mark frequency, relative to the sample rate
+     * @param fSpace  space frequency, relative to the sample rate
+     */
+    default void setTones(double fMark, double fSpace) {
+    }
+
+    /**
+     * Calculates mark and space magnitudes
+     * @param sampleBuf  Sample buffer
+     * @param pSamples   Starting position to analyze
+     * @param nSamples   Number of samples to analyze
+     * @param magsOutp   [0] <-- mark magnitude
+     *                   [1] <-- space magnitude
+     */
+    void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp);
+
+    /**
+     * Drops any state derived from the sample buffer contents
+     * Shall be called whenever the contents of the sample buffer change
+     * (noop for stateless analyzers)
+     */
+    default void invalidate() {
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * minimodem4j
+ * MatchedFilterToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Tone analyzer based on matched filters
+ * Correlates the window with complex reference tones of the exact mark and
+ * space frequencies, precomputed once for the longest window seen. Unlike the
+ * DFT based analyzers the tones are not rounded to the bins of fftSize, and
+ * the cost is 4 multiplications per sample regardless of fftSize, so it is
+ * cheap at high data rates (1200, 600 baud UIC) where fftSize is much longer
+ * than the bit.
+ * The magnitudes are scaled the same way as the DFT ones (2/nSamples), so the
+ * confidence thresholds keep their meaning.
+ */
+public class MatchedFilterToneAnalyzer implements IToneAnalyzer {
+    private final int fftSize;
+
+    private double fMark;
+    private double fSpace;
+
+    /*
+     * Reference tones: [2*i] - cos, [2*i+1] - -sin
+     */
+    private float[] refMark = new float[0];
+    private float[] refSpace = new float[0];
+
+    /**
+     * Constructor
+     * @param fftSize   the size of (virtual) DFT, the bands given to setBands are the bins of it
+     */
+    public MatchedFilterToneAnalyzer(int fftSize) {
+        this.fftSize = fftSize;
+    }
+
+    /**
+     * Sets the tones to the centers of the bands (used by carrier autodetection)
+     */
+    public void setBands(int bMark, int bSpace) {
+        setTones((double) bMark / fftSize, (double) bSpace / fftSize);
+    }
+
+    /**
+     * Sets the exact tones
+     * @param fMark   mark frequency, relative to the sample rate
+     * @param fSpace  space frequency, relative to the sample rate
+     */
+    @Override
+    public void setTones(double fMark, double fSpace) {
+        this.fMark = fMark;
+        this.fSpace = fSpace;
+        int n = refMark.length / 2;
+        refMark = new float[0];
+        refSpace = new float[0];
+        ensureCapacity(n);
+    }
+
+    public void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp) {
+        ensureCapacity(nSamples);
+        float mRe = 0.0f, mIm = 0.0f;
+        float sRe = 0.0f, sIm = 0.0f;
+        for (int i = 0; i < nSamples; i++) {
+            float x = sampleBuf.get(pSamples + i);
+            mRe += x * refMark[2*i];
+            mIm += x * refMark[2*i+1];
+            sRe += x * refSpace[2*i];
+            sIm += x * refSpace[2*i+1];
+        }
+        double magScalar = 2.0 / nSamples;
+        magsOutp[0] = (float) (Math.sqrt(mRe*mRe + mIm*mIm) * magScalar);
+        magsOutp[1] = (float) (Math.sqrt(sRe*sRe + sIm*sIm) * magScalar);
+    }
+
+    /**
+     * Extends the reference tones up to the given length
+     * @param nSamples  window length
+     */
+    private void ensureCapacity(int nSamples) {
+        if (refMark.length >= 2 * nSamples) {
+            return;
+        }
+        refMark = reference(fMark, nSamples);
+        refSpace = reference(fSpace, nSamples);
+    }
+
+    private static float[] reference(double f, int nSamples) {
+        float[] ref = new float[2 * nSamples];
+        for (int i = 0; i < nSamples; i++) {
+            double w = 2.0 * Math.PI * f * i;
+            ref[2*i] = (float) Math.cos(w);
+            ref[2*i+1] = (float) -Math.sin(w);
+        }
+        return ref;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * minimodem4j
+ * SlidingDftToneAnalyzer.java
+ */
+package minimodem.fsk;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Tone analyzer based on sliding DFT
+ * The mark and space bins are tracked with a recursive per-sample update of
+ * running (phase referenced) accumulators:
+ *      acc[j+1] = acc[j] + x[j] * W^(b*j),  W = exp(-2*pi*i/fftSize)
+ * so the bin of any window [p, p+n) is acc[p+n] - acc[p], which differs from
+ * the zero padded fftSize DFT bin only by a phase factor.
+ * The accumulators are extended lazily and are valid while the sample buffer
+ * contents stay the same, so every additional window costs O(1) and moving the
+ * window by a step costs O(step) samples of accumulation at most.
+ */
+public class SlidingDftToneAnalyzer implements IToneAnalyzer {
+    private final int fftSize;
+    private final double[] cosTable;
+    private final double[] sinTable;
+
+    private int bMark;
+    private int bSpace;
+
+    /*
+     * Running accumulators: [2*j] - real part, [2*j+1] - imaginary part
+     * accN -- number of samples accumulated so far (from the buffer start)
+     */
+    private double[] accMark = new double[0];
+    private double[] accSpace = new double[0];
+    private int accN = 0;
+    private int idxMark = 0;
+    private int idxSpace = 0;
+
+    /**
+     * Constructor
+     * @param fftSize   the size of (virtual) DFT
+     */
+    public SlidingDftToneAnalyzer(int fftSize) {
+        this.fftSize = fftSize;
+        cosTable = new double[fftSize];
+        sinTable = new double[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            cosTable[i] = Math.cos(2.0 * Math.PI * i / fftSize);
+            sinTable[i] = -Math.sin(2.0 * Math.PI * i / fftSize);
+        }
+    }
+
+    public void setBands(int bMark, int bSpace) {
+        this.bMark = bMark;
+        this.bSpace = bSpace;
+        invalidate();
+    }
+
+    public void invalidate() {
+        accN = 0;
+        idxMark = 0;
+        idxSpace = 0;
+    }
+
+    public void analyze(FloatBuffer sampleBuf, int pSamples, int nSamples, float[] magsOutp) {
+        int pEnd = pSamples + nSamples;
+        if (pEnd > accN) {
+            accumulate(sampleBuf, pEnd);
+        }
+        double magScalar = 2.0 / nSamples;
+        magsOutp[0] = (float) (windowMag(accMark, pSamples, pEnd) * magScalar);
+        magsOutp[1] = (float) (windowMag(accSpace, pSamples, pEnd) * magScalar);
+    }
+
+    /**
+     * Extends running accumulators up to the given sample
+     * @param sampleBuf  Sample buffer
+     * @param pEnd       the position after the last sample to accumulate
+     */
+    private void accumulate(FloatBuffer sampleBuf, int pEnd) {
+        if (accMark.length < 2 * (pEnd + 1)) {
+            int size = 2 * Math.max(pEnd + 1, sampleBuf.capacity() + 1);
+            double[] m = new double[size];
+            double[] s = new double[size];
+            System.arraycopy(accMark, 0, m, 0, 2 * accN + (accN > 0 ? 2 : 0));
+            System.arraycopy(accSpace, 0, s, 0, 2 * accN + (accN > 0 ? 2 : 0));
+            accMark = m;
+            accSpace = s;
+        }
+        if (accN == 0) {
+            accMark[0] = accMark[1] = 0.0;
+            accSpace[0] = accSpace[1] = 0.0;
+        }
+        int j = accN;
+        int im = idxMark, is = idxSpace;
+        for (; j < pEnd; j++) {
+            double x = sampleBuf.get(j);
+            accMark[2*j+2] = accMark[2*j] + x * cosTable[im];
+            accMark[2*j+3] = accMark[2*j+1] + x * sinTable[im];
+            accSpace[2*j+2] = accSpace[2*j] + x * cosTable[is];
+            accSpace[2*j+3] = accSpace[2*j+1] + x * sinTable[is];
+            im += bMark;
+            if (im >= fftSize) {
+                im -= fftSize;
+            }
+            is += bSpace;
+            if (is >= fftSize) {
+                is -= fftSize;
+            }
+        }
+        idxMark = im;
+        idxSpace = is;
+        accN = j;
+    }
+
+    /**
+     * Calculates window bin magnitude from running accumulator
+     * @param acc    running accumulator
+     * @param pFrom  the first sample of the window
+     * @param pTo    the position after the last sample of the window
+     * @return       magnitude (not normalized)
+     */
+    private static double windowMag(double[] acc, int pFrom, int pTo) {
+        double re = acc[2*pTo] - acc[2*pFrom];
+        double im = acc[2*pTo+1] - acc[2*pFrom+1];
+        return Math.sqrt(re*re + im*im);
+    }
+}
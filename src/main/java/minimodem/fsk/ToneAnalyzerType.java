@@ -0,0 +1,51 @@
+/*
+ * minimodem4j
+ * ToneAnalyzerType.java
+ */
+package minimodem.fsk;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * Available tone analyzers (mark/space magnitude engines)
+ */
+public enum ToneAnalyzerType {
+    FFT("fft"),
+    GOERTZEL("goertzel"),
+    SDFT("sdft"),
+    MATCHED("matched");
+
+    private final String label;
+
+    ToneAnalyzerType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets command line label of the analyzer
+     * @return label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Creates tone analyzer of this type
+     * @param fftSize   FFT size
+     * @param fft       FFT instance of fftSize (may be shared)
+     * @return  tone analyzer
+     */
+    IToneAnalyzer create(int fftSize, FloatFFT_1D fft) {
+        switch (this) {
+            case GOERTZEL:
+                return new GoertzelToneAnalyzer(fftSize);
+            case SDFT:
+                return new SlidingDftToneAnalyzer(fftSize);
+            case MATCHED:
+                return new MatchedFilterToneAnalyzer(fftSize);
+            case FFT:
+            default:
+                return new FftToneAnalyzer(fftSize, fft);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * minimodem4j
+ * ToneMagCache.java
+ */
+package minimodem.fsk;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of mark/space magnitudes of bit windows
+ * Windows are keyed by absolute sample offset (the offset from the start of
+ * the sample stream), so cached values survive sample buffer shifts.
+ * The cache is direct mapped with the capacity of at least the sample buffer
+ * size, hence windows starting within the same buffer never evict each other,
+ * and entries which fall behind the buffer start are simply overwritten.
+ */
+class ToneMagCache {
+    private final int mask;
+    private final long[] tags;
+    private final float[] magsMark;
+    private final float[] magsSpace;
+
+    private int windowNSamples = 0;     // window size cached values belong to
+    private long base = 0;              // absolute offset of the first sample in the buffer
+    private int nValid = 0;             // number of valid samples in the buffer
+
+    /**
+     * Constructor
+     * @param size  minimal capacity (sample buffer size)
+     */
+    ToneMagCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 1));
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        tags = new long[capacity];
+        magsMark = new float[capacity];
+        magsSpace = new float[capacity];
+        clear();
+    }
+
+    /**
+     * Drops all cached values
+     */
+    void clear() {
+        Arrays.fill(tags, -1L);
+    }
+
+    /**
+     * Tracks sample buffer update
+     * @param shift   number of samples the buffer was shifted left by
+     * @param nValid  number of valid samples in the buffer after the update
+     */
+    void update(int shift, int nValid) {
+        base += shift;
+        this.nValid = nValid;
+    }
+
+    /**
+     * Looks up cached window magnitudes
+     * @param pSamples   window start position in the buffer
+     * @param nSamples   window size
+     * @param magsOutp   [0] <-- mark magnitude
+     *                   [1] <-- space magnitude
+     * @return  true if found, false otherwise
+     */
+    boolean lookup(int pSamples, int nSamples, float[] magsOutp) {
+        if (nSamples != windowNSamples) {
+            return false;
+        }
+        long tag = base + pSamples;
+        int i = (int) tag & mask;
+        if (tags[i] != tag) {
+            return false;
+        }
+        magsOutp[0] = magsMark[i];
+        magsOutp[1] = magsSpace[i];
+        return true;
+    }
+
+    /**
+     * Stores window magnitudes
+     * Windows which are not fully within the valid samples are not stored,
+     * since the buffer tail is going to be refilled
+     * @param pSamples   window start position in the buffer
+     * @param nSamples   window size
+     * @param mags       [0] --> mark magnitude
+     *                   [1] --> space magnitude
+     */
+    void store(int pSamples, int nSamples, float[] mags) {
+        if (pSamples + nSamples > nValid) {
+            return;
+        }
+        if (nSamples != windowNSamples) {
+            clear();
+            windowNSamples = nSamples;
+        }
+        long tag = base + pSamples;
+        int i = (int) tag & mask;
+        tags[i] = tag;
+        magsMark[i] = mags[0];
+        magsSpace[i] = mags[1];
+    }
+}
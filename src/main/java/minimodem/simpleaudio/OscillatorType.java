@@ -0,0 +1,31 @@
+/*
+ * minimodem4j
+ * OscillatorType.java
+ */
+package minimodem.simpleaudio;
+
+/**
+ * Available tone generator oscillators
+ *   TABLE       -- float phase per sample, sine table of any size (or Math.sin with --lut=0)
+ *   NCO         -- integer phase accumulator, power of two table, nearest entry
+ *   NCO_LINEAR  -- integer phase accumulator, power of two table, linear interpolation
+ */
+public enum OscillatorType {
+    TABLE("table"),
+    NCO("nco"),
+    NCO_LINEAR("nco-linear");
+
+    private final String label;
+
+    OscillatorType(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets command line label of the oscillator
+     * @return label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * minimodem4j
+ * PcmConverter.java
+ */
+package minimodem.simpleaudio;
+
+/**
+ * Integer PCM to float conversion stage
+ * Converts 8, 16 or 24 bit signed (little or big endian) or 8 bit unsigned
+ * mono samples from a byte array to floats in [-1.0, 1.0] scaled by the maximum
+ * positive value of the sample type (the same way 16 bit samples were
+ * always scaled by Short.MAX_VALUE).
+ * The scratch arrays are kept and only grow, so steady state reading does
+ * not allocate. Each sample width has its own plain primitive loop which
+ * the JIT compiles into tight (and, where it can, vectorized) code.
+ */
+class PcmConverter {
+    private final int bytesPerSample;
+    private final boolean bigEndian;
+    private final boolean unsigned;
+    private final float scale;
+
+    private byte[] bytes = new byte[0];
+    private float[] floats = new float[0];
+
+    /**
+     * Constructor
+     * @param bitsPerSample   8, 16 or 24
+     * @param bigEndian       byte order of the samples (ignored for 8 bit ones)
+     * @param unsigned        the samples are unsigned (offset binary, 8 bit only)
+     */
+    PcmConverter(int bitsPerSample, boolean bigEndian, boolean unsigned) {
+        this.bytesPerSample = bitsPerSample / 8;
+        this.bigEndian = bigEndian;
+        this.unsigned = unsigned;
+        this.scale = (float) ((1 << (bitsPerSample - 1)) - 1);
+    }
+
+    /**
+     * Checks if the format is supported
+     * @param bitsPerSample   bits per sample
+     * @param unsigned        the samples are unsigned
+     * @return  true for 8, 16 and 24 bit signed and 8 bit unsigned samples
+     */
+    static boolean isSupported(int bitsPerSample, boolean unsigned) {
+        return bitsPerSample == 8 || (!unsigned && (bitsPerSample == 16 || bitsPerSample == 24));
+    }
+
+    /**
+     * Gets byte scratch buffer to read raw samples into
+     * @param nSamples   number of samples to be read
+     * @return  scratch array of at least nSamples * bytesPerSample bytes
+     */
+    byte[] getBytes(int nSamples) {
+        if (bytes.length < nSamples * bytesPerSample) {
+            bytes = new byte[nSamples * bytesPerSample];
+        }
+        return bytes;
+    }
+
+    /**
+     * Converts the samples of the byte scratch buffer
+     * @param nSamples  number of samples to convert
+     * @return  float scratch array holding nSamples converted samples
+     */
+    float[] convert(int nSamples) {
+        if (floats.length < nSamples) {
+            floats = new float[nSamples];
+        }
+        final byte[] b = bytes;
+        final float[] f = floats;
+        final float s = scale;
+        switch (bytesPerSample) {
+            case 1:
+                if (unsigned) {
+                    for (int i = 0; i < nSamples; i++) {
+                        f[i] = ((float) ((b[i] & 0xFF) - 0x80)) / s;
+                    }
+                } else {
+                    for (int i = 0; i < nSamples; i++) {
+                        f[i] = ((float) b[i]) / s;
+                    }
+                }
+                break;
+            case 2:
+                if (bigEndian) {
+                    for (int i = 0, j = 0; i < nSamples; i++, j += 2) {
+                        f[i] = ((float) (short) ((b[j] << 8) | (b[j+1] & 0xFF))) / s;
+                    }
+                } else {
+                    for (int i = 0, j = 0; i < nSamples; i++, j += 2) {
+                        f[i] = ((float) (short) ((b[j+1] << 8) | (b[j] & 0xFF))) / s;
+                    }
+                }
+                break;
+            default:
+                if (bigEndian) {
+                    for (int i = 0, j = 0; i < nSamples; i++, j += 3) {
+                        f[i] = ((float) ((b[j] << 16) | ((b[j+1] & 0xFF) << 8) | (b[j+2] & 0xFF))) / s;
+                    }
+                } else {
+                    for (int i = 0, j = 0; i < nSamples; i++, j += 3) {
+                        f[i] = ((float) ((b[j+2] << 16) | ((b[j+1] & 0xFF) << 8) | (b[j] & 0xFF))) / s;
+                    }
+                }
+                break;
+        }
+        return f;
+    }
+}
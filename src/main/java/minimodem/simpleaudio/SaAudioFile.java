@@ -14,29 +14,44 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
-import static java.nio.ByteOrder.nativeOrder;
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_UNSIGNED;
 import static minimodem.simpleaudio.SaDirection.*;
 
 /**
  * Audio file abstraction
+ * Little endian WAV output is streamed straight to the file: placeholder
+ * header first, sizes patched on close, so the file may be tailed while
+ * it is written. The RIFF sizes are unsigned 32-bit: writes that would take
+ * the file past 4 GiB are refused (and logged once). Other output types are buffered in a temporary file and
+ * repackaged with javax.sound on close.
  */
 public class SaAudioFile extends SimpleAudio {
     private static final Logger fLogger = LogManager.getFormatterLogger(SaAudioFile.class);
 
+    private final static int WAV_HEADER_SIZE = 44;
+    private final static int WAVE_FORMAT_PCM = 1;
+    private final static int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private final static long WAV_MAX_DATA_SIZE = 0xFFFFFFFFL - (WAV_HEADER_SIZE - 8);
+
     protected SaDirection direction;
     protected AudioFileFormat.Type type = null;
     protected File fTmpOut = null;
     protected File file = null;
     protected FileChannel fTmpChannel = null;
+    protected FileChannel fOutChannel = null;       // streaming WAV output
+    protected boolean fOutFull = false;             // streaming WAV output reached WAV_MAX_DATA_SIZE
     protected AudioInputStream sIn = null;
     protected int bytesPerFrame = 1;
     protected boolean Signed2Float = false;
+    protected PcmConverter converter = null;
 
     /**
      * Opens file
@@ -75,7 +90,17 @@ public class SaAudioFile extends SimpleAudio {
             return false;
         }
 
-        if (direction == SA_TRANSMIT) {
+        if (direction == SA_TRANSMIT && type == AudioFileFormat.Type.WAVE && !aFormat.isBigEndian()) {
+            try {
+                fOutChannel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                fOutChannel.write(wavHeader(0));
+            } catch (IOException e) {
+                fLogger.error("Failed to create output file '%s': [%s]", f.getPath(), e.getMessage());
+                clean();
+                return false;
+            }
+        } else if (direction == SA_TRANSMIT) {
             try {
                 fTmpOut = File.createTempFile("minimodem-", ".tmp");
                 fTmpChannel = new FileOutputStream(fTmpOut, false).getChannel();
@@ -89,8 +114,12 @@ public class SaAudioFile extends SimpleAudio {
                 sIn = AudioSystem.getAudioInputStream(f);
                 aFormat = sIn.getFormat();
                 if (!getEncoding().equals(enc)) {
-                    if(getEncoding().equals(PCM_SIGNED) && enc.equals(PCM_FLOAT)) {
+                    boolean unsigned = getEncoding().equals(PCM_UNSIGNED);
+                    if((unsigned || getEncoding().equals(PCM_SIGNED)) && enc.equals(PCM_FLOAT)
+                            && aFormat.getChannels() == 1
+                            && PcmConverter.isSupported(aFormat.getSampleSizeInBits(), unsigned)) {
                       Signed2Float = true;
+                      converter = new PcmConverter(aFormat.getSampleSizeInBits(), aFormat.isBigEndian(), unsigned);
                     } else {
                         fLogger.error("Failed to open audio file '%s' due to encoding mismatch: actual '%s', requested: '%s'",
                                 f.getPath(), sIn.getFormat().getEncoding().toString(), enc.toString());
@@ -115,11 +144,23 @@ public class SaAudioFile extends SimpleAudio {
 
     /**
      * Close file, cleans associated resources
-     * For SA_TRANSMIT mode it also means repackaging of raw sound buffer into appropriate file format
+     * For SA_TRANSMIT mode it also means patching the sizes of WAV header or
+     * repackaging of raw sound buffer into appropriate file format
      */
     public void close()
     {
-        if (direction == SA_TRANSMIT) {
+        if (fOutChannel != null) {
+            try {
+                long dataSize = fOutChannel.size() - WAV_HEADER_SIZE;
+                if (dataSize > WAV_MAX_DATA_SIZE) {
+                    fLogger.error("Output file '%s' exceeds the WAV size limit of 4 GiB", file.getPath());
+                    dataSize = WAV_MAX_DATA_SIZE;
+                }
+                fOutChannel.write(wavHeader(dataSize), 0);
+            } catch (IOException e) {
+                fLogger.error("Failed to write output file '%s': [%s]", file.getPath(), e.getMessage());
+            }
+        } else if (direction == SA_TRANSMIT) {
             try {
                 fTmpChannel.close();
                 FileInputStream fInStream = new FileInputStream(fTmpOut);
@@ -134,7 +175,7 @@ public class SaAudioFile extends SimpleAudio {
     }
 
     /**
-     * Writes audio samples to file (actually, to temp. buffer)
+     * Writes audio samples to file (or to temp. buffer)
      * @param byteBuf   ByteBuffer to write
      * @param nFrames   Number of frames to write
      * @return number of frames written, -1 on error
@@ -146,12 +187,25 @@ public class SaAudioFile extends SimpleAudio {
         } else {
             byteBuf.rewind();
             try {
-                res = fTmpChannel.write(byteBuf);
+                if (fOutChannel != null &&
+                        fOutChannel.position() - WAV_HEADER_SIZE + byteBuf.remaining() > WAV_MAX_DATA_SIZE) {
+                    if (!fOutFull) {
+                        fLogger.error("Output file '%s' reached the WAV size limit of 4 GiB, the rest is dropped",
+                                file.getPath());
+                        fOutFull = true;
+                    }
+                    return -1;
+                }
+                res = (fOutChannel != null ? fOutChannel : fTmpChannel).write(byteBuf);
                 if (res>0) {
                     res /= getFrameSize();
                 }
             } catch (IOException e) {
-                fLogger.error("Failed to write to temporary buffer file '%s': [%s]", fTmpOut.getPath(), e.getMessage());
+                if (fOutChannel != null) {
+                    fLogger.error("Failed to write output file '%s': [%s]", file.getPath(), e.getMessage());
+                } else {
+                    fLogger.error("Failed to write to temporary buffer file '%s': [%s]", fTmpOut.getPath(), e.getMessage());
+                }
             }
         }
         return res;
@@ -173,15 +227,12 @@ public class SaAudioFile extends SimpleAudio {
         } else {
             try {
                 if (Signed2Float) {
-                    ByteBuffer bbBuf = ByteBuffer.allocate(nFrames*bytesPerFrame);
-                    bbBuf.order(nativeOrder());
-                    res = sIn.read(bbBuf.array(), 0, nFrames*bytesPerFrame)/bytesPerFrame;
+                    byte[] raw = converter.getBytes(nFrames);
+                    res = sIn.read(raw, 0, nFrames*bytesPerFrame)/bytesPerFrame;
                     if (res>0) {
-                        ShortBuffer sBuf = bbBuf.asShortBuffer();
                         FloatBuffer fBuf = byteBuf.asFloatBuffer();
-                        for (int i=0; i<res; i++) {
-                            fBuf.put(pFrames+i, ((float)sBuf.get(i))/(float)Short.MAX_VALUE);
-                        }
+                        fBuf.position(pFrames);
+                        fBuf.put(converter.convert(res), 0, res);
                     }
                 } else {
                     res = sIn.read(byteBuf.array(), pFrames*bytesPerFrame, nFrames*bytesPerFrame)/bytesPerFrame;
@@ -194,6 +245,31 @@ public class SaAudioFile extends SimpleAudio {
         return res;
     }
 
+    /**
+     * Builds canonical 44 byte RIFF/WAVE header
+     * @param dataSize  size of the data chunk (0 while the file is being written),
+     *                  at most WAV_MAX_DATA_SIZE (the sizes are written as unsigned 32-bit)
+     * @return header, ready to write
+     */
+    protected ByteBuffer wavHeader(long dataSize) {
+        int frameSize = getFrameSize();
+        ByteBuffer hdr = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        hdr.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        hdr.putInt((int) ((dataSize + WAV_HEADER_SIZE - 8) & 0xFFFFFFFFL));
+        hdr.put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII));
+        hdr.putInt(16);
+        hdr.putShort((short) (getEncoding().equals(PCM_FLOAT) ? WAVE_FORMAT_IEEE_FLOAT : WAVE_FORMAT_PCM));
+        hdr.putShort((short) aFormat.getChannels());
+        hdr.putInt(getRate());
+        hdr.putInt(getRate() * frameSize);
+        hdr.putShort((short) frameSize);
+        hdr.putShort((short) aFormat.getSampleSizeInBits());
+        hdr.put("data".getBytes(StandardCharsets.US_ASCII));
+        hdr.putInt((int) (dataSize & 0xFFFFFFFFL));
+        hdr.flip();
+        return hdr;
+    }
+
     /**
      * Cleans resource associated with a file as smoothly as possible
      * @return false if error have arised, true otherwise
@@ -202,7 +278,9 @@ public class SaAudioFile extends SimpleAudio {
         boolean ret = true;
 
         type = null;
+        fOutFull = false;
         Signed2Float = false;
+        converter = null;
         if (fTmpChannel != null) {
             try {
                 fTmpChannel.close();
@@ -212,6 +290,15 @@ public class SaAudioFile extends SimpleAudio {
                 ret = false;
             }
         }
+        if (fOutChannel != null) {
+            try {
+                fOutChannel.close();
+            } catch (IOException e) {
+                fLogger.error("Failed to close output file '%s': [%s]", file.getPath(), e.getMessage());
+                ret = false;
+            }
+            fOutChannel = null;
+        }
         if (fTmpOut != null) {
             ret = fTmpOut.delete();
             fTmpOut = null;
@@ -0,0 +1,306 @@
+/*
+ * minimodem4j
+ * SaMappedWavFile.java
+ */
+package minimodem.simpleaudio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
+import static minimodem.simpleaudio.SaDirection.SA_RECEIVE;
+
+/**
+ * Memory mapped WAV file (receive only)
+ * Parses RIFF/WAVE header itself and maps the data chunk with FileChannel.map,
+ * so the samples are copied (float) or converted (int16) once, straight from
+ * the page cache to the receiver buffer, without javax.sound streams.
+ * Huge files are mapped by windows of MAP_WINDOW bytes.
+ * Supported: mono 16 bit PCM and 32 bit IEEE float, read as PCM_FLOAT.
+ * Anything else shall be read with SaAudioFile, open() returns false for it.
+ */
+public class SaMappedWavFile extends SimpleAudio {
+    private static final Logger fLogger = LogManager.getFormatterLogger(SaMappedWavFile.class);
+
+    private final static int WAVE_FORMAT_PCM = 1;
+    private final static int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private final static int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private final static long MAP_WINDOW = 1L << 30;
+
+    protected File file = null;
+    protected FileChannel channel = null;
+    private ByteOrder fileOrder = ByteOrder.LITTLE_ENDIAN;
+    private int bytesPerFrame;
+    private boolean isFloat;
+    private long dataOffset;        // file offset of the data chunk
+    private long dataNFrames;       // number of frames in the data chunk
+    private long endFrame;          // the frame after the last one to read
+    private long framePos;          // next frame to read
+
+    private MappedByteBuffer map = null;
+    private long mapFrame;          // the first frame of the mapped window
+    private long mapNFrames;        // number of frames in the mapped window
+
+    /**
+     * Opens file
+     * @param f File object to open
+     * @param enc encoding requested (only PCM_FLOAT is supported)
+     * @param dir operation direction (only SA_RECEIVE is supported)
+     * @param sampleRate  sample rate (ignored, the rate of the file is used)
+     * @param nChannels  the number of channels (actually only 1 is supported)
+     * @param bfskMsbFirst  Big endian flag (ignored, RIFF is little endian and RIFX is big endian)
+     * @return true on success, false on error or unsupported file format
+     */
+    public boolean open(File f, AudioFormat.Encoding enc, SaDirection dir,
+                        int sampleRate, int nChannels, boolean bfskMsbFirst) {
+        if (f == null) {
+            fLogger.error("No file specified.");
+            return false;
+        }
+        close();
+        direction = dir;
+        file = f;
+        if (dir != SA_RECEIVE || !enc.equals(PCM_FLOAT) || nChannels != 1) {
+            fLogger.debug("Memory mapped file supports float mono receive only");
+            return false;
+        }
+        try {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            if (!parseHeader()) {
+                close();
+                return false;
+            }
+        } catch (IOException e) {
+            fLogger.error("Failed to open audio file '%s': [%s]", f.getPath(), e.getMessage());
+            close();
+            return false;
+        }
+        framePos = 0;
+        endFrame = dataNFrames;
+        fLogger.debug("Mapped '%s': %d frames of %s at offset %d",
+                f.getPath(), dataNFrames, getEncoding(), dataOffset);
+        return true;
+    }
+
+    /**
+     * Walks RIFF chunks up to the data chunk, sets audio format
+     * @return true if the format is supported
+     * @throws IOException on read error
+     */
+    private boolean parseHeader() throws IOException {
+        ByteBuffer hdr = ByteBuffer.allocate(12);
+        if (!readFully(hdr, 0)) {
+            fLogger.debug("'%s' is too short for a RIFF file", file.getPath());
+            return false;
+        }
+        String riff = tag(hdr, 0);
+        if (riff.equals("RIFF")) {
+            fileOrder = ByteOrder.LITTLE_ENDIAN;
+        } else if (riff.equals("RIFX")) {
+            fileOrder = ByteOrder.BIG_ENDIAN;
+        } else {
+            fLogger.debug("'%s' is not a RIFF file", file.getPath());
+            return false;
+        }
+        if (!tag(hdr, 8).equals("WAVE")) {
+            fLogger.debug("'%s' is not a WAVE file", file.getPath());
+            return false;
+        }
+
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(fileOrder);
+        ByteBuffer fmt = null;
+        long pos = 12;
+        while (readFully(chunk, pos)) {
+            String id = tag(chunk, 0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            pos += 8;
+            if (id.equals("fmt ")) {
+                fmt = ByteBuffer.allocate((int) Math.min(size, 64)).order(fileOrder);
+                if (size < 16 || !readFully(fmt, pos)) {
+                    fLogger.debug("'%s' has broken fmt chunk", file.getPath());
+                    return false;
+                }
+            } else if (id.equals("data")) {
+                if (fmt == null) {
+                    fLogger.debug("'%s' has no fmt chunk before data chunk", file.getPath());
+                    return false;
+                }
+                dataOffset = pos;
+                // streamed files may have the size not patched: limit it by the file
+                long available = channel.size() - pos;
+                long dataSize = size == 0 || size > available ? available : size;
+                return setFormat(fmt, dataSize);
+            }
+            pos += size + (size & 1);   // chunks are word aligned
+        }
+        fLogger.debug("'%s' has no data chunk", file.getPath());
+        return false;
+    }
+
+    /**
+     * Sets audio format from fmt chunk
+     * @param fmt       fmt chunk contents
+     * @param dataSize  data chunk size
+     * @return true if the format is supported
+     */
+    private boolean setFormat(ByteBuffer fmt, long dataSize) {
+        int formatTag = fmt.getShort(0) & 0xFFFF;
+        int nChannels = fmt.getShort(2) & 0xFFFF;
+        int rate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12) & 0xFFFF;
+        int bits = fmt.getShort(14) & 0xFFFF;
+        if (formatTag == WAVE_FORMAT_EXTENSIBLE && fmt.capacity() >= 26) {
+            formatTag = fmt.getShort(24) & 0xFFFF;      // the first two bytes of the subformat GUID
+        }
+        if (nChannels != 1) {
+            fLogger.debug("'%s': %d channels are not supported", file.getPath(), nChannels);
+            return false;
+        }
+        if (formatTag == WAVE_FORMAT_PCM && bits == 16 && blockAlign == 2) {
+            isFloat = false;
+        } else if (formatTag == WAVE_FORMAT_IEEE_FLOAT && bits == 32 && blockAlign == 4) {
+            isFloat = true;
+        } else {
+            fLogger.debug("'%s': format %d with %d bits per sample is not supported",
+                    file.getPath(), formatTag, bits);
+            return false;
+        }
+        bytesPerFrame = blockAlign;
+        dataNFrames = dataSize / bytesPerFrame;
+        aFormat = new AudioFormat(isFloat ? PCM_FLOAT : PCM_SIGNED, rate, bits, 1,
+                bytesPerFrame, rate, fileOrder == ByteOrder.BIG_ENDIAN);
+        return true;
+    }
+
+    /**
+     * Reads audio samples from file
+     * @param byteBuf  ByteBuffer to store samples (as native order floats)
+     * @param pFrames  The first frame to read
+     * @param nFrames  Maximum number of frames to read
+     * @return  >0   OK, number of samples red
+     *          ==0  OK, EOF reached
+     *          -1   Error
+     */
+    public int read(ByteBuffer byteBuf, int pFrames, int nFrames) {
+        if (channel == null) {
+            fLogger.error("Cannot read from file which is not open");
+            return -1;
+        }
+        if (framePos >= endFrame) {
+            return 0;
+        }
+        if (framePos < mapFrame || framePos >= mapFrame + mapNFrames) {
+            if (!mapWindow()) {
+                return -1;
+            }
+        }
+        int n = (int) Math.min(nFrames, Math.min(mapFrame + mapNFrames, endFrame) - framePos);
+        int off = (int) (framePos - mapFrame) * bytesPerFrame;
+
+        ByteBuffer src = map.duplicate().order(fileOrder);
+        src.position(off);
+        src.limit(off + n * bytesPerFrame);
+        FloatBuffer out = byteBuf.asFloatBuffer();
+        out.position(pFrames);
+        if (isFloat) {
+            out.put(src.asFloatBuffer());
+        } else {
+            ShortBuffer sBuf = src.asShortBuffer();
+            for (int i = 0; i < n; i++) {
+                out.put(pFrames + i, ((float) sBuf.get(i)) / (float) Short.MAX_VALUE);
+            }
+        }
+        framePos += n;
+        return n;
+    }
+
+    /**
+     * Restricts reading to the range of frames
+     * Makes the file look like the recording of the range only (segmented decode)
+     * @param first    the first frame to read
+     * @param nFrames  number of frames to read
+     */
+    public void setRange(long first, long nFrames) {
+        framePos = Math.max(0, Math.min(first, dataNFrames));
+        endFrame = Math.min(dataNFrames, framePos + nFrames);
+    }
+
+    /**
+     * @return number of frames in the file
+     */
+    public long getNFrames() {
+        return dataNFrames;
+    }
+
+    /**
+     * Maps the window of the data chunk starting at the current frame
+     * @return true on success
+     */
+    private boolean mapWindow() {
+        mapFrame = framePos;
+        mapNFrames = Math.min(dataNFrames - framePos, MAP_WINDOW / bytesPerFrame);
+        try {
+            map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    dataOffset + mapFrame * bytesPerFrame, mapNFrames * bytesPerFrame);
+        } catch (IOException e) {
+            fLogger.error("Cannot map file '%s': [%s]", file.getPath(), e.getMessage());
+            map = null;
+            mapNFrames = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writing is not supported
+     * @return -1
+     */
+    public int write(ByteBuffer byteBuf, int nFrames) {
+        fLogger.error("Cannot write to memory mapped file '%s'", file == null ? "" : file.getPath());
+        return -1;
+    }
+
+    /**
+     * Close file, cleans associated resources
+     */
+    public void close() {
+        map = null;
+        mapFrame = 0;
+        mapNFrames = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                fLogger.error("Failed to close audio file '%s': [%s]", file.getPath(), e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private boolean readFully(ByteBuffer buf, long pos) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String tag(ByteBuffer buf, int p) {
+        return new String(new char[] {(char) buf.get(p), (char) buf.get(p + 1),
+                (char) buf.get(p + 2), (char) buf.get(p + 3)});
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * minimodem4j
+ * SaReadAhead.java
+ */
+package minimodem.simpleaudio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.ByteOrder.nativeOrder;
+
+/**
+ * Read-ahead decorator of receiving audio source
+ * A producer thread reads blocks of float samples from the source into a pool
+ * of nBlocks buffers and queues them, read() just copies the queued samples,
+ * so reading (disk, decoding, conversion) overlaps with demodulation.
+ * The buffers travel between two bounded queues (free and filled), nothing is
+ * allocated after the start. Only float samples (the receive format) are supported.
+ */
+public class SaReadAhead extends SimpleAudio {
+    private static final Logger fLogger = LogManager.getFormatterLogger(SaReadAhead.class);
+
+    private final static int BLOCK_NFRAMES = 8_192;
+
+    /**
+     * Block of samples, nFrames > 0 -- samples, 0 -- EOF, <0 -- error
+     */
+    private static class Block {
+        final ByteBuffer raw;
+        final FloatBuffer samples;
+        int nFrames;
+        int pos;
+
+        Block(int capacity) {
+            raw = ByteBuffer.allocate(capacity * Float.BYTES);
+            raw.order(nativeOrder());
+            samples = raw.asFloatBuffer();
+        }
+    }
+
+    private final SimpleAudio source;
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread producer;
+    private Block current = null;
+
+    /**
+     * Constructor
+     * Starts reading from the source
+     * @param source   audio source opened for receiving float samples
+     * @param nBlocks  number of blocks to read ahead
+     */
+    public SaReadAhead(SimpleAudio source, int nBlocks) {
+        this.source = source;
+        direction = source.direction;
+        aFormat = source.aFormat;
+        free = new ArrayBlockingQueue<>(nBlocks);
+        filled = new ArrayBlockingQueue<>(nBlocks);
+        for (int i = 0; i < nBlocks; i++) {
+            free.add(new Block(BLOCK_NFRAMES));
+        }
+        producer = new Thread(this::produce, "minimodem-read-ahead");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * Producer thread: fills free blocks until EOF or error
+     */
+    private void produce() {
+        try {
+            int r;
+            do {
+                Block b = free.take();
+                r = source.read(b.raw, 0, BLOCK_NFRAMES);
+                b.nFrames = r;
+                b.pos = 0;
+                filled.put(b);
+            } while (r > 0);
+        } catch (InterruptedException ignored) {
+            // closed
+        }
+    }
+
+    /**
+     * Reads queued samples
+     * Blocks until nFrames samples are there or EOF is reached, like a file read
+     * @param byteBuf  ByteBuffer to store samples
+     * @param pFrames  The first frame to read
+     * @param nFrames  Maximum number of frames to read
+     * @return  >0   OK, number of samples red
+     *          ==0  OK, EOF reached
+     *          -1   Error
+     */
+    public int read(ByteBuffer byteBuf, int pFrames, int nFrames) {
+        FloatBuffer dst = byteBuf.asFloatBuffer();
+        int n = 0;
+        while (n < nFrames) {
+            if (current == null) {
+                try {
+                    current = filled.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+            if (current.nFrames <= 0) {
+                // EOF or error: sticky, the producer is done
+                return n > 0 ? n : current.nFrames;
+            }
+            int k = Math.min(nFrames - n, current.nFrames - current.pos);
+            FloatBuffer src = current.samples.duplicate();
+            src.position(current.pos);
+            src.limit(current.pos + k);
+            dst.position(pFrames + n);
+            dst.put(src);
+            n += k;
+            current.pos += k;
+            if (current.pos == current.nFrames) {
+                free.add(current);
+                current = null;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Writing is not supported
+     * @return -1
+     */
+    public int write(ByteBuffer byteBuf, int nFrames) {
+        fLogger.error("Cannot write to read-ahead audio source");
+        return -1;
+    }
+
+    /**
+     * Stops the producer, closes the source
+     */
+    public void close() {
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+}
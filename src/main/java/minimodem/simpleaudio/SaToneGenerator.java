@@ -11,6 +11,8 @@ import org.apache.logging.log4j.Logger;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 import static java.nio.ByteOrder.nativeOrder;
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
@@ -18,9 +20,23 @@ import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
 
 /**
  * Tone generator (modulator)
+ * Tones are rendered into the output block, which is written to the audio
+ * device when it is full or flushed, so the device gets a few large writes
+ * instead of one per bit. The block is allocated once and reused.
  */
 public class SaToneGenerator {
     private static final Logger fLogger = LogManager.getFormatterLogger(SaToneGenerator.class);
+    private final static int BLOCK_NFRAMES = 8_192;
+    private final static int NCO_DEFAULT_BITS = 12;     // NCO table size when --lut=0
+    private final static int NCO_MIN_BITS = 2;          // smaller tables hold zeros only
+    private final static int NCO_MAX_BITS = 20;
+    /*
+     * Waveform cache: symbols start from the NCO phase rounded to one of
+     * 2^WAVEFORM_CACHE_PHASE_BITS buckets (at most 1/512 turn off), and the
+     * cache stops growing at WAVEFORM_CACHE_MAX_BYTES
+     */
+    private final static int WAVEFORM_CACHE_PHASE_BITS = 8;
+    private final static int WAVEFORM_CACHE_MAX_BYTES = 32 << 20;
     /**
      * Precompiled sine table(s)
      * sinTableFloat  -- as floats (-1.0 to 1.0)
@@ -35,16 +51,69 @@ public class SaToneGenerator {
     private short toneMagShort = (short) (0.5f);
     private float saToneCphase = 0.0f;
 
+    /*
+     * Numerically controlled oscillator (see OscillatorType)
+     *   ncoTableFloat, ncoTableShort -- sine tables of 2^ncoBits entries plus a guard entry
+     *                                   (equal to the first one) for interpolation
+     *   ncoPhase -- phase accumulator, 2^32 is a full turn: wraps around for free
+     *   ncoStep  -- phase increment per sample of the current tone
+     */
+    private OscillatorType oscillator = OscillatorType.TABLE;
+    private int ncoBits;
+    private float[] ncoTableFloat;
+    private short[] ncoTableShort;
+    private int ncoPhase = 0;
+    private int ncoStep = 0;
+
+    /*
+     * Waveform cache (NCO only, see toneEnableCache)
+     *   symbols rendered in the output encoding (native order bytes),
+     *   keyed by (phase step, duration, starting phase bucket)
+     */
+    private Map<Long, byte[]> waveformCache = null;
+    private int waveformCacheBytes = 0;
+
+    /*
+     * Bit-edge shaping (CPFSK, NCO only, see toneShaping)
+     *   shapeTable -- raised cosine weights (Q16) of the new tone phase step,
+     *                 one per sample of the transition
+     */
+    private int[] shapeTable = null;
+
+    /*
+     * Output block
+     *   block          -- samples in native order (viewed as blockFloat or blockShort)
+     *   blockFrameSize -- frame size the block was allocated for
+     *   blockNFrames   -- the number of frames rendered and not written yet
+     */
+    private ByteBuffer block = null;
+    private FloatBuffer blockFloat;
+    private ShortBuffer blockShort;
+    private int blockFrameSize = 0;
+    private int blockNFrames = 0;
+
     /**
      * Initialize or drop sine lookup table
      * @param newSinTableLen table size
      * @param mag signal magnitude
      */
     public void toneInit(int newSinTableLen, float mag) {
+        toneInit(newSinTableLen, mag, OscillatorType.TABLE);
+    }
+
+    /**
+     * Initialize or drop sine lookup table, select oscillator
+     * @param newSinTableLen table size (rounded up to a power of two for NCO, 0 -- default size;
+     *                       the NCO table is clamped to 2^NCO_MIN_BITS..2^NCO_MAX_BITS entries)
+     * @param mag signal magnitude
+     * @param osc oscillator
+     */
+    public void toneInit(int newSinTableLen, float mag, OscillatorType osc) {
         sinTableLen = newSinTableLen;
         toneMagFloat = mag;
 
-        if (sinTableLen != 0) {
+        // the NCO oscillators use their own power of two table (below)
+        if (sinTableLen != 0 && osc == OscillatorType.TABLE) {
             sinTableShort = new short[sinTableLen];
             sinTableFloat = new float[sinTableLen];
 
@@ -69,56 +138,297 @@ public class SaToneGenerator {
                 sinTableFloat = null;
             }
         }
+
+        oscillator = osc;
+        if (waveformCache != null) {
+            waveformCache.clear();
+            waveformCacheBytes = 0;
+        }
+        ncoTableFloat = null;
+        ncoTableShort = null;
+        ncoPhase = 0;
+        if (oscillator != OscillatorType.TABLE) {
+            if (newSinTableLen == 0) {
+                ncoBits = NCO_DEFAULT_BITS;
+            } else {
+                int bits = 32 - Integer.numberOfLeadingZeros(newSinTableLen - 1);
+                ncoBits = Math.max(NCO_MIN_BITS, Math.min(bits, NCO_MAX_BITS));
+                if (ncoBits != bits) {
+                    fLogger.warn("NCO table size %d is out of range, using %d.", newSinTableLen, 1 << ncoBits);
+                }
+            }
+            int n = 1 << ncoBits;
+            float magShort = Math.max(1.0f, Math.min(32767.0f, 32767.0f * toneMagFloat + 0.5f));
+            ncoTableFloat = new float[n + 1];
+            ncoTableShort = new short[n + 1];
+            for (int i = 0; i <= n; i++) {
+                double s = Math.sin(Math.PI * 2 * (i & (n - 1)) / n);
+                ncoTableFloat[i] = toneMagFloat * (float) s;
+                ncoTableShort[i] = lroundf((float) ((int) magShort * s));
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the waveform cache
+     * With the cache, NCO tones (see OscillatorType) are rendered once per
+     * (frequency, duration, starting phase bucket) in the output encoding and
+     * then just copied to the output block. The NCO phase itself keeps running
+     * exactly, so the rounding of the starting phase does not accumulate.
+     * @param enable  true to enable
+     */
+    public void toneEnableCache(boolean enable) {
+        waveformCache = enable ? new HashMap<>() : null;
+        waveformCacheBytes = 0;
+    }
+
+    /**
+     * Sets bit-edge shaping up
+     * With shaping, the first nsamples samples of an NCO tone (see OscillatorType)
+     * following another tone move the phase step from the previous tone to the
+     * new one along a raised cosine, instead of switching at once. The phase is
+     * continuous anyway, shaping keeps the frequency continuous too.
+     * The weights are computed here once, per sample of the transition.
+     * @param nsamples  transition length (the number of samples), 0 -- no shaping
+     */
+    public void toneShaping(int nsamples) {
+        if (nsamples <= 0) {
+            shapeTable = null;
+            return;
+        }
+        shapeTable = new int[nsamples];
+        for (int i = 0; i < nsamples; i++) {
+            shapeTable[i] = (int) Math.round(65536.0 * (0.5 - 0.5 * Math.cos(Math.PI * (i + 0.5) / nsamples)));
+        }
     }
 
     /**
      * Emit tone
+     * The samples are rendered into the output block, call flush() at the end
+     * of transmission to write the rest of them
      * @param saOut         Audio device
      * @param toneFreq      frequency
      * @param nsamplesDur   duration (the number of samples)
      */
     public void Tone(SimpleAudio saOut, float toneFreq, int nsamplesDur) {
         int framesize = saOut.getFrameSize();
-        ByteBuffer byteBuf = ByteBuffer.allocateDirect(nsamplesDur * framesize);
-        byteBuf.order(nativeOrder());           // Here it shall be native order. Lsb/Msb is handled in the code.
-        FloatBuffer floatBuf = byteBuf.asFloatBuffer();
-        ShortBuffer shortBuf = byteBuf.asShortBuffer();
-        int i;
+        if (block == null || blockFrameSize != framesize) {
+            flush(saOut);
+            block = ByteBuffer.allocateDirect(BLOCK_NFRAMES * framesize);
+            block.order(nativeOrder());           // Here it shall be native order. Lsb/Msb is handled in the code.
+            blockFloat = block.asFloatBuffer();
+            blockShort = block.asShortBuffer();
+            blockFrameSize = framesize;
+            if (waveformCache != null) {
+                waveformCache.clear();
+                waveformCacheBytes = 0;
+            }
+        }
+        if (toneFreq != 0 && !saOut.getEncoding().equals(PCM_FLOAT) && !saOut.getEncoding().equals(PCM_SIGNED)) {
+            fLogger.error("Invalid stream format [%s] in processing.", saOut.getEncoding().toString());
+        }
+
+        float waveNsamples = toneFreq != 0 ? saOut.getRate() / toneFreq : 0.0f;
+        int prevStep = ncoStep;
+        ncoStep = (int) Math.round((double) toneFreq / saOut.getRate() * 4294967296.0);
+        boolean isNco = toneFreq != 0 && oscillator != OscillatorType.TABLE &&
+                (saOut.getEncoding().equals(PCM_FLOAT) || saOut.getEncoding().equals(PCM_SIGNED));
+        int first = 0;
+        if (isNco && shapeTable != null && prevStep != 0 && prevStep != ncoStep) {
+            // the previous tone was not silence (step 0) and differs: shaped transition
+            first = Math.min(shapeTable.length, nsamplesDur);
+            renderTransition(saOut, saOut.getEncoding().equals(PCM_FLOAT), prevStep, first);
+        }
+        byte[] symbol = null;
+        if (waveformCache != null && isNco && first < nsamplesDur) {
+            symbol = cachedSymbol(saOut.getEncoding().equals(PCM_FLOAT), nsamplesDur - first);
+        }
+        if (symbol != null) {
+            copySymbol(saOut, symbol);
+            ncoPhase += ncoStep * (nsamplesDur - first);
+        }
+        for (int i = symbol != null ? nsamplesDur : first; i < nsamplesDur; ) {
+            int n = Math.min(nsamplesDur - i, BLOCK_NFRAMES - blockNFrames);
+            render(saOut, toneFreq != 0 ? waveNsamples : 0.0f, i, n);
+            blockNFrames += n;
+            i += n;
+            if (blockNFrames == BLOCK_NFRAMES) {
+                flush(saOut);
+            }
+        }
 
         if (toneFreq != 0) {
-            float waveNsamples = saOut.getRate() / toneFreq;
-            if (saOut.getEncoding().equals(PCM_FLOAT)) {
-                if (sinTableFloat != null) {
-                    for (i = 0; i < nsamplesDur; i++) {
-                        floatBuf.put(sinLuFloat(sinePhaseTurns(i, waveNsamples)));
-                    }
-                } else {
-                    for (i = 0; i < nsamplesDur; i++) {
-                        floatBuf.put((float) (toneMagFloat * Math.sin(sinePhaseRadians(i, waveNsamples))));
-                    }
+            saToneCphase = (saToneCphase + nsamplesDur / waveNsamples) % 1.0f;
+        } else {
+            saToneCphase = 0.0f;
+            ncoPhase = 0;
+        }
+    }
+
+    /**
+     * Renders tone samples into the output block (after blockNFrames rendered ones)
+     * @param saOut         Audio device
+     * @param waveNsamples  wave length in samples, 0.0 for silence
+     * @param first         the first sample (of the tone) to render
+     * @param n             the number of samples to render
+     */
+    private void render(SimpleAudio saOut, float waveNsamples, int first, int n) {
+        int p = blockNFrames - first;
+        int i;
+        if (waveNsamples != 0.0f && oscillator != OscillatorType.TABLE &&
+                (saOut.getEncoding().equals(PCM_FLOAT) || saOut.getEncoding().equals(PCM_SIGNED))) {
+            ncoPhase = renderNco(saOut.getEncoding().equals(PCM_FLOAT), blockFloat, blockShort,
+                    blockNFrames, n, ncoPhase, ncoStep);
+        } else if (waveNsamples != 0.0f && saOut.getEncoding().equals(PCM_FLOAT)) {
+            if (sinTableFloat != null) {
+                for (i = first; i < first + n; i++) {
+                    blockFloat.put(p + i, sinLuFloat(sinePhaseTurns(i, waveNsamples)));
                 }
-            } else if (saOut.getEncoding().equals(PCM_SIGNED)) {
-                    if (sinTableShort != null) {
-                        for (i = 0; i < nsamplesDur; i++) {
-                            shortBuf.put(sinLuShort(sinePhaseTurns(i, waveNsamples)));
-                        }
-                    } else {
-                        for (i = 0; i < nsamplesDur; i++) {
-                            shortBuf.put(lroundf((float) (toneMagShort * Math.sin(sinePhaseRadians(i, waveNsamples)))));
-                        }
-                    }
             } else {
-                    fLogger.error("Invalid stream format [%s] in processing.", saOut.getEncoding().toString());
+                for (i = first; i < first + n; i++) {
+                    blockFloat.put(p + i, (float) (toneMagFloat * Math.sin(sinePhaseRadians(i, waveNsamples))));
+                }
+            }
+        } else if (waveNsamples != 0.0f && saOut.getEncoding().equals(PCM_SIGNED)) {
+            if (sinTableShort != null) {
+                for (i = first; i < first + n; i++) {
+                    blockShort.put(p + i, sinLuShort(sinePhaseTurns(i, waveNsamples)));
+                }
+            } else {
+                for (i = first; i < first + n; i++) {
+                    blockShort.put(p + i, lroundf((float) (toneMagShort * Math.sin(sinePhaseRadians(i, waveNsamples)))));
+                }
             }
-            saToneCphase = (saToneCphase + nsamplesDur / waveNsamples) % 1.0f;
         } else {
-            for (i = 0; i < nsamplesDur * framesize; i++) {
-                byteBuf.put((byte) 0);
+            // silence (or unsupported format)
+            for (i = blockNFrames * blockFrameSize; i < (blockNFrames + n) * blockFrameSize; i++) {
+                block.put(i, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Renders the shaped transition from the previous tone to the current one into the output block
+     * @param saOut     Audio device
+     * @param isFloat   float samples (short otherwise)
+     * @param fromStep  phase step of the previous tone
+     * @param n         transition length (the number of samples, up to shapeTable length)
+     */
+    private void renderTransition(SimpleAudio saOut, boolean isFloat, int fromStep, int n) {
+        final long delta = (long) ncoStep - fromStep;
+        for (int i = 0; i < n; i++) {
+            int step = fromStep + (int) ((delta * shapeTable[i]) >> 16);
+            ncoPhase = renderNco(isFloat, blockFloat, blockShort, blockNFrames, 1, ncoPhase, step);
+            if (++blockNFrames == BLOCK_NFRAMES) {
+                flush(saOut);
+            }
+        }
+    }
+
+    /**
+     * Gets the symbol of the current tone from the waveform cache, renders it if it is not there
+     * @param isFloat  float samples (short otherwise)
+     * @param n        symbol duration (the number of samples)
+     * @return  symbol samples (native order bytes), null if the cache is full
+     */
+    private byte[] cachedSymbol(boolean isFloat, int n) {
+        final int bucketShift = 32 - WAVEFORM_CACHE_PHASE_BITS;
+        int bucket = ((ncoPhase + (1 << (bucketShift - 1))) >>> bucketShift) & ((1 << WAVEFORM_CACHE_PHASE_BITS) - 1);
+        long key = ((long) ncoStep << 32) | ((long) n << WAVEFORM_CACHE_PHASE_BITS) | bucket;
+        byte[] symbol = waveformCache.get(key);
+        if (symbol == null) {
+            if (waveformCacheBytes + n * blockFrameSize > WAVEFORM_CACHE_MAX_BYTES) {
+                return null;
+            }
+            symbol = new byte[n * blockFrameSize];
+            ByteBuffer b = ByteBuffer.wrap(symbol).order(nativeOrder());
+            renderNco(isFloat, b.asFloatBuffer(), b.asShortBuffer(), 0, n, bucket << bucketShift, ncoStep);
+            waveformCache.put(key, symbol);
+            waveformCacheBytes += symbol.length;
+        }
+        return symbol;
+    }
+
+    /**
+     * Copies the symbol to the output block
+     * @param saOut   Audio device
+     * @param symbol  symbol samples (native order bytes)
+     */
+    private void copySymbol(SimpleAudio saOut, byte[] symbol) {
+        for (int off = 0; off < symbol.length; ) {
+            int k = Math.min(symbol.length - off, (BLOCK_NFRAMES - blockNFrames) * blockFrameSize);
+            block.position(blockNFrames * blockFrameSize);
+            block.put(symbol, off, k);
+            blockNFrames += k / blockFrameSize;
+            off += k;
+            if (blockNFrames == BLOCK_NFRAMES) {
+                flush(saOut);
+            }
+        }
+    }
+
+    /**
+     * Renders NCO samples
+     * The table index is the top ncoBits of the phase, the rest of it is the
+     * interpolation fraction: no division, no range reduction, no branches per sample.
+     * @param isFloat  float samples (short otherwise)
+     * @param fOut     float samples output
+     * @param sOut     short samples output
+     * @param p        position of the first sample in the output
+     * @param n        the number of samples to render
+     * @param phase    phase of the first sample
+     * @param step     phase increment per sample
+     * @return  phase of the sample after the last one
+     */
+    private int renderNco(boolean isFloat, FloatBuffer fOut, ShortBuffer sOut, int p, int n, int phase, int step) {
+        final int shift = 32 - ncoBits;
+        if (oscillator == OscillatorType.NCO) {
+            final int half = 1 << (shift - 1);      // rounds to the nearest entry
+            if (isFloat) {
+                final float[] t = ncoTableFloat;
+                for (int i = 0; i < n; i++, phase += step) {
+                    fOut.put(p + i, t[(phase + half) >>> shift]);
+                }
+            } else {
+                final short[] t = ncoTableShort;
+                for (int i = 0; i < n; i++, phase += step) {
+                    sOut.put(p + i, t[(phase + half) >>> shift]);
+                }
+            }
+        } else {
+            final int fracMask = (1 << shift) - 1;
+            final float fracScale = 1.0f / (1 << shift);
+            if (isFloat) {
+                final float[] t = ncoTableFloat;
+                for (int i = 0; i < n; i++, phase += step) {
+                    int k = phase >>> shift;
+                    float a = t[k];
+                    fOut.put(p + i, a + (t[k + 1] - a) * ((phase & fracMask) * fracScale));
+                }
+            } else {
+                final short[] t = ncoTableShort;
+                for (int i = 0; i < n; i++, phase += step) {
+                    int k = phase >>> shift;
+                    float a = t[k];
+                    sOut.put(p + i, lroundf(a + (t[k + 1] - a) * ((phase & fracMask) * fracScale)));
+                }
             }
-            saToneCphase = 0.0f;
         }
+        return phase;
+    }
 
-        saOut.write(byteBuf, nsamplesDur);
+    /**
+     * Writes the samples rendered to the audio device
+     * @param saOut         Audio device
+     */
+    public void flush(SimpleAudio saOut) {
+        if (blockNFrames > 0) {
+            block.clear();
+            block.limit(blockNFrames * blockFrameSize);
+            saOut.write(block, blockNFrames);
+            block.clear();
+            blockNFrames = 0;
+        }
     }
 
     /**
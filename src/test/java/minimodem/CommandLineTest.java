@@ -1,5 +1,7 @@
 package minimodem;
 
+import minimodem.fsk.ToneAnalyzerType;
+import minimodem.simpleaudio.OscillatorType;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
@@ -178,5 +180,152 @@ public class CommandLineTest
         }
 
     }
-}
 
+    // Tone analyzer ("--analyzer") parameter tests
+    @Test
+    public void ToneAnalyzerTest() {
+        final String[] args0 = {"--rx", "300"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.toneAnalyzer == ToneAnalyzerType.FFT;
+
+        final String[] args1 = {"--rx", "300", "--analyzer", "Goertzel"};
+        minimodem = processCmdLine(args1);
+        assert minimodem.toneAnalyzer == ToneAnalyzerType.GOERTZEL;
+
+        final String[] args3 = {"--rx", "300", "--analyzer", "matched"};
+        minimodem = processCmdLine(args3);
+        assert minimodem.toneAnalyzer == ToneAnalyzerType.MATCHED;
+
+        final String[] args2 = {"--rx", "300", "--analyzer=dft"};
+        try {
+            processCmdLine(args2);
+            assert false;
+        } catch (Exception ignored) {
+        }
+    }
+
+    // Tone oscillator ("--oscillator") parameter tests
+    @Test
+    public void OscillatorTest() {
+        final String[] args0 = {"--tx", "300"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.txOscillator == OscillatorType.TABLE;
+        final String[] args1 = {"--tx", "300", "--oscillator", "NCO-linear"};
+        minimodem = processCmdLine(args1);
+        assert minimodem.txOscillator == OscillatorType.NCO_LINEAR;
+        final String[] args2 = {"--tx", "300", "--oscillator", "dds"};
+        try {
+            processCmdLine(args2);
+            assert false;
+        } catch (Exception ignored) {
+        }
+        final String[] args3 = {"--tx", "300", "--oscillator", "nco", "--waveform-cache"};
+        minimodem = processCmdLine(args3);
+        assert minimodem.txWaveformCache;
+        assert minimodem.configure() == 0;
+        final String[] args4 = {"--tx", "300", "--waveform-cache"};
+        assert processCmdLine(args4).configure() != 0;
+        final String[] args5 = {"--tx", "300", "--oscillator", "nco", "--shaping", "0.5"};
+        minimodem = processCmdLine(args5);
+        assert minimodem.txShaping == 0.5f;
+        assert minimodem.configure() == 0;
+        final String[] args6 = {"--tx", "300", "--shaping", "0.5"};
+        assert processCmdLine(args6).configure() != 0;
+        for (String bad : new String[] {"0", "1.5", "x"}) {
+            final String[] args7 = {"--tx", "300", "--oscillator", "nco", "--shaping", bad};
+            try {
+                processCmdLine(args7);
+                assert false;
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    // Read-ahead ("--read-ahead") parameter tests
+    @Test
+    public void ReadAheadTest() {
+        final String[] args0 = {"--rx", "300"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.readAhead == 0;
+        final String[] args1 = {"--rx", "300", "--read-ahead", "4"};
+        minimodem = processCmdLine(args1);
+        assert minimodem.readAhead == 4;
+        for (String bad : new String[] {"0", "-1", "x"}) {
+            final String[] args2 = {"--rx", "300", "--read-ahead", bad};
+            try {
+                processCmdLine(args2);
+                assert false;
+            } catch(Exception ignored) {
+            }
+        }
+    }
+
+    // Batch mode ("--batch") parameter tests
+    @Test
+    public void BatchTest() {
+        final String[] args0 = {"--rx", "300", "--batch", "caps/*.wav", "--batch-threads", "2"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.batch.equals("caps/*.wav");
+        assert minimodem.batchThreads == 2;
+        assert minimodem.configure() == 0;
+        final String[] args1 = {"--rx", "300", "--batch", "caps", "-f", "a.wav"};
+        assert processCmdLine(args1).configure() != 0;
+        final String[] args2 = {"--tx", "300", "--batch", "caps"};
+        assert processCmdLine(args2).configure() != 0;
+        final String[] args3 = {"--rx", "300", "--batch", "caps", "--batch-threads", "0"};
+        try {
+            processCmdLine(args3);
+            assert false;
+        } catch(Exception ignored) {
+        }
+    }
+
+    // Segmented decode ("--segment") parameter tests
+    @Test
+    public void SegmentTest() {
+        final String[] args0 = {"--rx", "300", "-f", "a.wav", "--segment", "2.5", "--segment-threads", "2"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.segmentSeconds == 2.5f;
+        assert minimodem.segmentThreads == 2;
+        assert minimodem.configure() == 0;
+        final String[] args1 = {"--rx", "300", "--segment", "2.5"};
+        assert processCmdLine(args1).configure() != 0;
+        final String[] args2 = {"--rx", "300", "-f", "a.wav", "--segment", "2.5", "--rx-one"};
+        assert processCmdLine(args2).configure() != 0;
+        final String[] args3 = {"--rx", "300", "-f", "a.wav", "--segment", "0"};
+        try {
+            processCmdLine(args3);
+            assert false;
+        } catch(Exception ignored) {
+        }
+    }
+
+// FSK channels ("--channel") - repeatable {mark:space} pairs
+    @Test
+    public void ChannelTest() {
+        final String[] args0 = {"--rx", "300"};
+        Minimodem minimodem = processCmdLine(args0);
+        assert minimodem.channels.isEmpty();
+        final String[] args1 = {"--rx", "300", "--channel", "1270:1070", "--channel", "2225.5:2025"};
+        minimodem = processCmdLine(args1);
+        assert minimodem.channels.size() == 2;
+        assert minimodem.channels.get(0)[0] == 1270.0f && minimodem.channels.get(0)[1] == 1070.0f;
+        assert minimodem.channels.get(1)[0] == 2225.5f && minimodem.channels.get(1)[1] == 2025.0f;
+        for (String bad : new String[] {"1270", "1270:x", "1270:-1070", "1:2:3"}) {
+            final String[] args2 = {"--rx", "300", "--channel", bad};
+            try {
+                processCmdLine(args2);
+                assert false;
+            } catch(Exception ignored) {
+            }
+        }
+        final String[] args3 = {"--rx", "300", "--channel", "1270:1070", "--channel", "2225:2025",
+                "--channel-out", "ch{n}.txt"};
+        assert processCmdLine(args3).configure() == 0;
+        final String[] args4 = {"--rx", "300", "--channel", "1270:1070", "--channel", "2225:2025",
+                "--channel-out", "ch.txt"};
+        assert processCmdLine(args4).configure() != 0;
+        final String[] args5 = {"--rx", "300", "--channel-out", "ch{n}.txt"};
+        assert processCmdLine(args5).configure() != 0;
+    }
+}
@@ -3,7 +3,15 @@ package minimodem;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Flow;
 
 public class ReceiverFunctionalTest {
     boolean compareFiles(File file1, File file2) {
@@ -30,16 +38,19 @@ public class ReceiverFunctionalTest {
         return false;
     }
 
-    private Minimodem setupModem(String fn) {
+    private Minimodem setupModem(String fn, String... extraArgs) {
         Minimodem minimodem = new Minimodem();
         CommandLine cmd = new CommandLine(minimodem);
         final String[] args = {"--rx", "300", "-f", fn};
-        cmd.parseArgs(args);
+        String[] allArgs = new String[args.length + extraArgs.length];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        System.arraycopy(extraArgs, 0, allArgs, args.length, extraArgs.length);
+        cmd.parseArgs(allArgs);
         assert (minimodem.configure()==0);
         return minimodem;
     }
 
-    private void runTest(File fIn, File fSample) {
+    private void runTest(File fIn, File fSample, String... extraArgs) {
         String fnOut = fIn.getParent() + "/tmp.txt";
         File fOut = new File(fnOut);
 //        fOut.deleteOnExit();
@@ -49,7 +60,7 @@ public class ReceiverFunctionalTest {
         } catch (FileNotFoundException e) {
             assert false;
         }
-        Minimodem minimodem = setupModem(fIn.getPath());
+        Minimodem minimodem = setupModem(fIn.getPath(), extraArgs);
         assert (minimodem.receive()==0);
         System.setOut(originalOut);
         assert (compareFiles(fSample, fOut));
@@ -90,4 +101,402 @@ public class ReceiverFunctionalTest {
         runTest(fIn, fSample);
     }
 
+    @Test
+    public void TestGoertzel() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--analyzer", "goertzel");
+        }
+    }
+
+    @Test
+    public void TestSlidingDft() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--analyzer", "sdft", "--Xpedantic");
+        }
+    }
+
+    @Test
+    public void TestMatchedFilter() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--analyzer", "matched");
+        }
+    }
+
+    @Test
+    public void TestParallel() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--rx-threads", "4");
+            runTest(fIn, fSample, "--rx-threads", "3", "--analyzer", "sdft", "--Xpedantic");
+        }
+    }
+
+    @Test
+    public void TestReadAhead() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--read-ahead", "2");
+        }
+    }
+
+    @Test
+    public void TestSegmented() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--segment", "0.3", "--segment-threads", "3");
+        }
+    }
+
+    private short[] readSamples(File f) throws Exception {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(f)) {
+            byte[] raw = in.readAllBytes();
+            short[] samples = new short[raw.length / 2];
+            ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+            return samples;
+        }
+    }
+
+    /**
+     * Sample source: delivers float chunks synchronously from request()
+     */
+    private static class ChunkSource implements Flow.Subscription {
+        private final float[] samples;
+        private final int chunk;
+        private final Flow.Subscriber<? super float[]> subscriber;
+        private int pos = 0;
+        private int nDelivered = 0;
+        private boolean cancelled = false;
+
+        ChunkSource(short[] samples, int chunk, Flow.Subscriber<? super float[]> subscriber) {
+            this.samples = new float[samples.length];
+            for (int i = 0; i < samples.length; i++) {
+                this.samples[i] = samples[i] / (float) Short.MAX_VALUE;
+            }
+            this.chunk = chunk;
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        public void request(long n) {
+            for (; n > 0 && pos < samples.length && !cancelled; n--) {
+                int k = Math.min(chunk, samples.length - pos);
+                pos += k;
+                nDelivered++;
+                subscriber.onNext(Arrays.copyOfRange(samples, pos - k, pos));
+            }
+            if (n > 0 && pos == samples.length && !cancelled) {
+                pos++;
+                subscriber.onComplete();
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    @Test
+    public void TestFlow() throws Exception {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            short[] samples = readSamples(fIn);
+            FlowReceiver rx = new FlowReceiver(48000, "300");
+            ChunkSource source = new ChunkSource(samples, 1000, rx);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int[] nEvents = {0, 0, 0};      // CARRIER, NOCARRIER, complete
+            rx.subscribe(new Flow.Subscriber<FrameEvent>() {
+                private Flow.Subscription subscription;
+
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                public void onNext(FrameEvent event) {
+                    switch (event.getType()) {
+                        case CARRIER:
+                            nEvents[0]++;
+                            break;
+                        case NOCARRIER:
+                            assert event.getStats().getNFrames() > 0;
+                            nEvents[1]++;
+                            break;
+                        default:
+                            out.write(event.getFrame().getData(), 0, event.getFrame().getData().length);
+                    }
+                    subscription.request(1);
+                }
+
+                public void onError(Throwable throwable) {
+                    assert false;
+                }
+
+                public void onComplete() {
+                    nEvents[2]++;
+                }
+            });
+            assert nEvents[0] > 0 && nEvents[0] == nEvents[1];
+            assert nEvents[2] == 1;
+            assert Arrays.equals(out.toByteArray(), Files.readAllBytes(fSample.toPath()));
+
+            // backpressure: the subscriber wants a single event, decoding stops soon after the first frame
+            rx = new FlowReceiver(48000, "300");
+            source = new ChunkSource(samples, 1000, rx);
+            int[] nReceived = {0};
+            rx.subscribe(new Flow.Subscriber<FrameEvent>() {
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(1);
+                }
+
+                public void onNext(FrameEvent event) {
+                    nReceived[0]++;
+                }
+
+                public void onError(Throwable throwable) {
+                    assert false;
+                }
+
+                public void onComplete() {
+                    assert false;
+                }
+            });
+            assert nReceived[0] == 1;
+            assert source.nDelivered < samples.length / 1000 / 2;
+
+            // --rx-one: the source is cancelled after the first carrier, the subscriber completes
+            short[] twice = Arrays.copyOf(samples, 2 * samples.length + 48000);    // 1 s of silence between
+            System.arraycopy(samples, 0, twice, samples.length + 48000, samples.length);
+            rx = new FlowReceiver(48000, "300", "--rx-one");
+            source = new ChunkSource(twice, 1000, rx);
+            ByteArrayOutputStream outOne = new ByteArrayOutputStream();
+            int[] nCompleted = {0};
+            rx.subscribe(new Flow.Subscriber<FrameEvent>() {
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                public void onNext(FrameEvent event) {
+                    if (event.getType() == FrameEvent.Type.DATA) {
+                        outOne.write(event.getFrame().getData(), 0, event.getFrame().getData().length);
+                    }
+                }
+
+                public void onError(Throwable throwable) {
+                    assert false;
+                }
+
+                public void onComplete() {
+                    nCompleted[0]++;
+                }
+            });
+            assert nCompleted[0] == 1;
+            assert source.cancelled;
+            assert source.nDelivered < twice.length / 1000;
+            assert Arrays.equals(outOne.toByteArray(), Files.readAllBytes(fSample.toPath()));
+        }
+    }
+
+    @Test
+    public void TestStreaming() throws Exception {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            short[] samples = readSamples(fIn);
+            int rate = (int) AudioSystem.getAudioFileFormat(fIn).getFormat().getSampleRate();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long[] lastPosition = {-1};
+            int[] nCarriers = {0, 0};
+            StreamingReceiver rx = new StreamingReceiver(rate, new IFrameListener() {
+                public void frame(DecodedFrame frame) {
+                    assert frame.getPosition() > lastPosition[0];
+                    assert frame.getConfidence() > 0.0f;
+                    lastPosition[0] = frame.getPosition();
+                    out.write(frame.getData(), 0, frame.getData().length);
+                }
+
+                public void carrier(long position, float frequency) {
+                    nCarriers[0]++;
+                }
+
+                public void noCarrier(long position, CarrierStats stats) {
+                    assert stats.getNFrames() > 0;
+                    nCarriers[1]++;
+                }
+            }, "300");
+            // chunks of random size, float and 16 bit ones in turn
+            Random random = new Random(1);
+            for (int p = 0, k = 0; p < samples.length; p += k) {
+                k = Math.min(samples.length - p, 1 + random.nextInt(3000));
+                if (random.nextBoolean()) {
+                    assert rx.offer(samples, p, k);
+                } else {
+                    float[] f = new float[k];
+                    for (int i = 0; i < k; i++) {
+                        f[i] = samples[p + i] / (float) Short.MAX_VALUE;
+                    }
+                    assert rx.offer(f, 0, k);
+                }
+            }
+            rx.close();
+            assert nCarriers[0] > 0 && nCarriers[0] == nCarriers[1];
+            assert Arrays.equals(out.toByteArray(), Files.readAllBytes(fSample.toPath()));
+        }
+    }
+
+    @Test
+    public void TestCarrierAvg() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--auto-carrier", "--carrier-avg", "2");
+        }
+    }
+
+    @Test
+    public void TestChannels() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--channel", "1270:1070");
+        }
+    }
+
+    @Test
+    public void TestChannelsOutput() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("minimodem-channels-").toFile();
+        File fIn = new File(this.getClass().getResource("/Test1/Test_input.wav").getFile());
+        File fSample = new File(this.getClass().getResource("/Test1/Test_output.txt").getFile());
+        byte[] sample = Files.readAllBytes(fSample.toPath());
+
+        // shared output: the data is labelled with the channel (the second one decodes noise)
+        File fOut = new File(dir, "all.txt");
+        Minimodem minimodem = setupModem(fIn.getPath(), "--channel", "1270:1070", "--channel", "2225:2025");
+        PrintStream originalOut = System.out;
+        try (PrintStream out = new PrintStream(new FileOutputStream(fOut))) {
+            System.setOut(out);
+            assert (minimodem.receive() == 0);
+        } finally {
+            System.setOut(originalOut);
+        }
+        String all = new String(Files.readAllBytes(fOut.toPath()), "ISO-8859-1");
+        java.util.regex.Matcher m = java.util.regex.Pattern.compile("(?:^|\\n)\\[ch(\\d)\\] ").matcher(all);
+        StringBuilder[] data = {new StringBuilder(), new StringBuilder()};
+        int channel = -1;
+        int p = 0;
+        while (m.find()) {
+            if (channel >= 0) {
+                data[channel].append(all, p, m.start());
+            }
+            channel = Integer.parseInt(m.group(1)) - 1;
+            p = m.end();
+        }
+        data[channel].append(all.substring(p));
+        assert data[0].toString().equals(new String(sample, "ISO-8859-1"));
+        assert data[1].length() > 0;
+
+        // separate outputs
+        String pattern = new File(dir, "ch{n}.txt").getPath();
+        minimodem = setupModem(fIn.getPath(), "--channel", "1270:1070", "--channel", "2225:2025",
+                "--channel", "1270:1070", "--channel-out", pattern);
+        assert (minimodem.receive() == 0);
+        assert (compareFiles(fSample, new File(dir, "ch1.txt")));
+        assert (new File(dir, "ch2.txt").exists());
+        assert (compareFiles(fSample, new File(dir, "ch3.txt")));
+    }
+
+    @Test
+    public void TestChannelize() {
+        for (String t : new String[] {"/Test1", "/Test2", "/Test3", "/Test4"}) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+            runTest(fIn, fSample, "--channelize");
+        }
+    }
+
+    @Test
+    public void TestBatch() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("minimodem-batch-").toFile();
+        File outDir = new File(dir, "out");
+        String[] tests = {"/Test1", "/Test2", "/Test3", "/Test4"};
+        StringBuilder list = new StringBuilder("# batch list\n");
+        for (String t : tests) {
+            File fIn = new File(this.getClass().getResource(t + "/Test_input.wav").getFile());
+            File fCopy = new File(dir, t.substring(1) + ".wav");
+            java.nio.file.Files.copy(fIn.toPath(), fCopy.toPath());
+            list.append(fCopy.getPath()).append("\n");
+        }
+        File fList = new File(dir, "list.txt");
+        java.nio.file.Files.write(fList.toPath(), list.toString().getBytes());
+
+        for (String spec : new String[] {dir.getPath(), dir.getPath() + "/Test*.wav", fList.getPath()}) {
+            Minimodem minimodem = new Minimodem();
+            new CommandLine(minimodem).parseArgs("--rx", "300", "--batch", spec,
+                    "--batch-out", outDir.getPath(), "--batch-threads", "3");
+            assert (minimodem.configure() == 0);
+            assert (minimodem.receive() == 0);
+            for (String t : tests) {
+                File fSample = new File(this.getClass().getResource(t + "/Test_output.txt").getFile());
+                File fOut = new File(outDir, t.substring(1) + ".txt");
+                assert (compareFiles(fSample, fOut));
+                assert (fOut.delete());
+            }
+        }
+    }
+
+    @Test
+    public void TestBatchSameNames() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("minimodem-batch-").toFile();
+        File outDir = new File(dir, "out");
+        String[] tests = {"/Test1", "/Test2", "/Test3"};
+        File[] inputs = {new File(dir, "a/x.wav"), new File(dir, "b/x.wav"), new File(dir, "a/y.wav")};
+        for (int k = 0; k < tests.length; k++) {
+            File fIn = new File(this.getClass().getResource(tests[k] + "/Test_input.wav").getFile());
+            assert (inputs[k].getParentFile().isDirectory() || inputs[k].getParentFile().mkdirs());
+            java.nio.file.Files.copy(fIn.toPath(), inputs[k].toPath());
+        }
+        // y.au is y.wav (Test3) of another format
+        File fAu = new File(dir, "a/y.au");
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(inputs[2])) {
+            AudioSystem.write(in, javax.sound.sampled.AudioFileFormat.Type.AU, fAu);
+        }
+
+        // inputs of different directories keep their directories under --batch-out
+        Minimodem minimodem = new Minimodem();
+        new CommandLine(minimodem).parseArgs("--rx", "300", "--batch", dir.getPath() + "/**/x.wav",
+                "--batch-out", outDir.getPath());
+        assert (minimodem.configure() == 0);
+        assert (minimodem.receive() == 0);
+        assert (compareFiles(new File(this.getClass().getResource("/Test1/Test_output.txt").getFile()),
+                new File(outDir, "a/x.txt")));
+        assert (compareFiles(new File(this.getClass().getResource("/Test2/Test_output.txt").getFile()),
+                new File(outDir, "b/x.txt")));
+
+        // files of the same name in one directory keep their extensions
+        minimodem = new Minimodem();
+        new CommandLine(minimodem).parseArgs("--rx", "300", "--batch", new File(dir, "a").getPath());
+        assert (minimodem.configure() == 0);
+        assert (minimodem.receive() == 0);
+        File fSample = new File(this.getClass().getResource("/Test3/Test_output.txt").getFile());
+        assert (compareFiles(fSample, new File(dir, "a/y.wav.txt")));
+        assert (compareFiles(fSample, new File(dir, "a/y.au.txt")));
+        assert (!new File(dir, "a/y.txt").exists());
+
+        // a single audio file is decoded, not read as a list
+        minimodem = new Minimodem();
+        new CommandLine(minimodem).parseArgs("--rx", "300", "--batch", inputs[1].getPath());
+        assert (minimodem.configure() == 0);
+        assert (minimodem.receive() == 0);
+        assert (compareFiles(new File(this.getClass().getResource("/Test2/Test_output.txt").getFile()),
+                new File(dir, "b/x.txt")));
+    }
 }
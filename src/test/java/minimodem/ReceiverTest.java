@@ -1,12 +1,16 @@
 package minimodem;
+import minimodem.databits.IEncodeDecode;
 import minimodem.simpleaudio.SaAudioFile;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
 import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
@@ -86,6 +90,26 @@ public class ReceiverTest {
         rx.sampleBuf.put(500,-2.5f);
         rx.shiftSampleBuf(500);
         assert rx.sampleBuf.get(0) == -2.5f;
+        assert rx.samplesNValid == 1500;
+    }
+
+    @Test
+    public void rxRefillBufTest3() {
+        genTestData("tmp.wav", "The quick brown fox jumps over the lazy dog");
+        Minimodem modem = setupRxModem("tmp.wav");
+        assert (modem.configure()==0);
+        Receiver rx = setupReceiver("tmp.wav", modem);
+        rx.configure(null);
+        rx.refillBuf();
+        // the window wraps over the store several times, the samples shall stay in place
+        for (int i = 0; i < 40 && rx.samplesNValid > 1200; i++) {
+            float v0 = rx.sampleBuf.get(1100);
+            float v1 = rx.sampleBuf.get(1199);
+            rx.advance = 1100;
+            rx.refillBuf();
+            assert rx.sampleBuf.get(0) == v0;
+            assert rx.sampleBuf.get(99) == v1;
+        }
     }
 
     @Test
@@ -103,4 +127,95 @@ public class ReceiverTest {
     /* 2000+240 samples --> 8960 bytes --> 0x2300 bytes (pos 40 = 0x28) of the file */
     }
 
-}
\ No newline at end of file
+    private Minimodem setupRxModem(String fn, String... extraArgs) {
+        Minimodem minimodem = new Minimodem();
+        CommandLine cmd = new CommandLine(minimodem);
+        final String[] args = {"--rx", "300", "-q", "-f", fn};
+        String[] allArgs = new String[args.length + extraArgs.length];
+        System.arraycopy(args, 0, allArgs, 0, args.length);
+        System.arraycopy(extraArgs, 0, allArgs, args.length, extraArgs.length);
+        cmd.parseArgs(allArgs);
+        assert (minimodem.configure() == 0);
+        return minimodem;
+    }
+
+    private byte[] rxSingle(String fn, String... extraArgs) {
+        Minimodem modem = setupRxModem(fn, extraArgs);
+        Receiver rx = setupReceiver(fn, modem);
+        rx.configure(null);
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        rx.receive(modem.bfskDatabitsEncodeDecode, true, false, false);
+        System.setOut(originalOut);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void rxChannelsTest() {
+        String fn = this.getClass().getResource("/Test1/Test_input.wav").getFile();
+        Minimodem modem = setupRxModem(fn, "--channel", "1270:1070", "--channel", "2225:2025");
+        Receiver rx = setupReceiver(fn, modem);
+        rx.configure(null);
+        ByteArrayOutputStream out0 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        IEncodeDecode[] decoders = {modem.encodeDecodeFactory.get(), modem.encodeDecodeFactory.get()};
+        PrintStream[] outs = {new PrintStream(out0), new PrintStream(out1)};
+        rx.receiveChannels(decoders, outs, true, false);
+
+        // every channel decodes exactly as a single channel receiver would
+        assert Arrays.equals(out0.toByteArray(), rxSingle(fn, "--analyzer", "sdft"));
+        assert Arrays.equals(out1.toByteArray(), rxSingle(fn, "--analyzer", "sdft", "-M", "2225", "-S", "2025"));
+        assert out0.size() == 62;
+    }
+
+    @Test
+    public void dataSinkTest() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedDataSink sink = new BufferedDataSink(out, 4, 60_000);
+        byte[] data = "abcdefghij".getBytes(StandardCharsets.US_ASCII);
+        sink.write(data, 0, 3);
+        assert out.size() == 0;                 // buffered
+        sink.poll();
+        assert out.size() == 0;                 // not old enough
+        sink.write(data, 3, 3);
+        assert out.toString().equals("abcd");   // buffer full
+        sink.write(data, 6, 4);
+        assert out.toString().equals("abcdefgh");
+        sink.flush();
+        assert out.toString().equals("abcdefghij");
+        sink.flush();
+        assert out.size() == 10;
+
+        // time threshold: zero delay passes every write on
+        out.reset();
+        sink = new BufferedDataSink(out, 4, 0);
+        sink.write(data, 0, 1);
+        assert out.toString().equals("a");
+
+        // time threshold with no further write: the receive loop polls the sink
+        out.reset();
+        sink = new BufferedDataSink(out, 4, 20);
+        sink.write(data, 0, 1);
+        Thread.sleep(40);
+        sink.poll();
+        assert out.toString().equals("a");
+    }
+
+    @Test
+    public void carrierAvgTransformsTest() {
+        // 10 s of silence at 300 bps, bit-sized (160 samples) segments
+        Minimodem modem = setupRxModem("none.wav", "--auto-carrier", "--carrier-avg", "2");
+        Receiver rx = new Receiver(48000, modem);
+        rx.configure(null);
+        rx.startPush(modem.bfskDatabitsEncodeDecode, frame -> { assert false; }, true, false, false);
+        float[] silence = new float[4800];
+        for (int k = 0; k < 100; k++) {
+            rx.push(java.nio.FloatBuffer.wrap(silence), 0, silence.length);
+        }
+        rx.endPush();
+        // one transform every 4 bits, instead of one per bit
+        long nTransforms = rx.getCarrierNTransforms();
+        assert nTransforms > 0 && nTransforms <= 10 * 300 / 4 + 1;
+    }
+}
@@ -3,7 +3,18 @@ package minimodem;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
+import minimodem.simpleaudio.SaAudioFile;
+import minimodem.simpleaudio.SaToneGenerator;
+import minimodem.simpleaudio.SimpleAudio;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_SIGNED;
+import static minimodem.simpleaudio.SaDirection.SA_TRANSMIT;
 
 public class TransmitterFunctionalTest {
     boolean compareFiles(File file1, File file2) {
@@ -85,4 +96,77 @@ public class TransmitterFunctionalTest {
         runTest(fIn, fSample);
     }
 
+    // bulk input from a channel and from a stream, read in chunks
+    @Test
+    public void TestChannel() throws IOException {
+        File fIn = new File(this.getClass().getResource("/Test2/test_output.txt").getFile());
+        File fSample = new File(this.getClass().getResource("/Test2/test_input.wav").getFile());
+        for (int k = 0; k < 2; k++) {
+            File fOut = new File(fIn.getParent() + "/tmp" + k + ".wav");
+            fOut.deleteOnExit();
+            Minimodem minimodem = setupModem(fOut.getPath());
+            SaToneGenerator toneGenerator = new SaToneGenerator();
+            toneGenerator.toneInit(minimodem.txSinTableLen, minimodem.txAmplitude);
+            SaAudioFile saOut = new SaAudioFile();
+            assert saOut.open(fOut, PCM_SIGNED, SA_TRANSMIT, minimodem.sampleRate, 1, false);
+            Transmitter tx = new Transmitter(saOut, toneGenerator, minimodem);
+            if (k == 0) {
+                try (FileChannel in = FileChannel.open(fIn.toPath())) {
+                    tx.fskTransmit(minimodem.bfskDatabitsEncodeDecode, in);
+                }
+            } else {
+                try (InputStream in = new FileInputStream(fIn)) {
+                    tx.fskTransmit(minimodem.bfskDatabitsEncodeDecode, in);
+                }
+            }
+            saOut.close();
+            assert (compareFiles(fSample, fOut));
+        }
+    }
+
+    // interactive input: a short line is written out before more input comes
+    @Test
+    public void TestInteractive() {
+        Minimodem minimodem = setupModem("unused.wav");
+        SaToneGenerator toneGenerator = new SaToneGenerator();
+        toneGenerator.toneInit(minimodem.txSinTableLen, minimodem.txAmplitude);
+        int[] nFrames = new int[1];
+        SimpleAudio saOut = new SimpleAudio() {
+            public int read(ByteBuffer byteBuf, int pFrames, int nFrames) {
+                return -1;
+            }
+
+            public int write(ByteBuffer byteBuf, int n) {
+                nFrames[0] += n;
+                return n;
+            }
+
+            public void close() {
+            }
+        };
+        assert saOut.open(PCM_SIGNED, SA_TRANSMIT, minimodem.sampleRate, 1, false);
+        Transmitter tx = new Transmitter(saOut, toneGenerator, minimodem);
+        ReadableByteChannel in = new ReadableByteChannel() {
+            private boolean sent = false;
+
+            public int read(ByteBuffer dst) {
+                if (!sent) {
+                    sent = true;
+                    dst.put("hi\n".getBytes(StandardCharsets.US_ASCII));
+                    return 3;
+                }
+                // 3 frames of 10 bits at 160 samples per bit, less than a tone generator block
+                assert nFrames[0] >= 3 * 10 * 160;
+                return -1;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+        tx.fskTransmit(minimodem.bfskDatabitsEncodeDecode, in);
+    }
 }
@@ -0,0 +1,214 @@
+package minimodem.fsk;
+
+import minimodem.simpleaudio.SaAudioFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static java.nio.ByteOrder.nativeOrder;
+import static javax.sound.sampled.AudioFormat.Encoding.PCM_FLOAT;
+import static minimodem.simpleaudio.SaDirection.SA_RECEIVE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for minimodem.fsk
+ */
+public class FskTest {
+    private static final float SAMPLE_RATE = 48000.0f;
+    private static final float MARK_F = 1270.0f;
+    private static final float SPACE_F = 1070.0f;
+    private static final float BANDWIDTH = 50.0f;
+    private static final int FRAME_NSAMPLES = 1760;    // 11 bits @ 300 bps
+    private static final byte[] EXPECT_BITS = "10dddddddd1\0".getBytes();
+
+    private FloatBuffer loadSamples(String resource) {
+        return loadSamples(resource, 48000 * 4);
+    }
+
+    private FloatBuffer loadSamples(String resource, int nSamples) {
+        SaAudioFile f = new SaAudioFile();
+        assert f.open(new File(this.getClass().getResource(resource).getFile()),
+                PCM_FLOAT, SA_RECEIVE, (int) SAMPLE_RATE, 1, false);
+        ByteBuffer raw = ByteBuffer.allocate(nSamples * Float.BYTES);
+        raw.order(nativeOrder());
+        int n = f.read(raw, 0, nSamples);
+        f.close();
+        assert n > FRAME_NSAMPLES;
+        FloatBuffer buf = raw.asFloatBuffer();
+        buf.limit(n);
+        return buf;
+    }
+
+    private void compareAnalyzers(String resource, ToneAnalyzerType type) {
+        compareAnalyzers(resource, type, loadSamples(resource));
+    }
+
+    private void compareAnalyzers(String resource, ToneAnalyzerType type, FloatBuffer samples) {
+        Fsk fft = new Fsk(SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH, ToneAnalyzerType.FFT);
+        Fsk other = new Fsk(SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH, type);
+        FrameResult r1 = new FrameResult();
+        FrameResult r2 = new FrameResult();
+        int nFrames = 0;
+        for (int t = 0; t + FRAME_NSAMPLES * 2 < samples.limit(); t += 37) {
+            fft.fskFindFrame(samples, FRAME_NSAMPLES, t, t + 1, 1, 2.3f, EXPECT_BITS, r1);
+            other.fskFindFrame(samples, FRAME_NSAMPLES, t, t + 1, 1, 2.3f, EXPECT_BITS, r2);
+            float c1 = r1.getConfidence();
+            float c2 = r2.getConfidence();
+            if (c1 > 1.5f) {
+                assertEquals(c1, c2, c1 * 1.0e-3f);
+                assertEquals(r1.getBits(), r2.getBits());
+                assertEquals(r1.getAmplitude(), r2.getAmplitude(), 1.0e-4f);
+                assertEquals(r1.getFrameStart(), r2.getFrameStart());
+                nFrames++;
+            }
+        }
+        assert nFrames > 0;
+    }
+
+    @Test
+    public void GoertzelVsFftTest() {
+        compareAnalyzers("/Test1/Test_input.wav", ToneAnalyzerType.GOERTZEL);
+        compareAnalyzers("/Test3/Test_input.wav", ToneAnalyzerType.GOERTZEL);
+    }
+
+    @Test
+    public void SlidingDftVsFftTest() {
+        // the first second only, to keep the test time reasonable
+        compareAnalyzers("/Test1/Test_input.wav", ToneAnalyzerType.SDFT,
+                loadSamples("/Test1/Test_input.wav", (int) SAMPLE_RATE));
+        compareAnalyzers("/Test3/Test_input.wav", ToneAnalyzerType.SDFT,
+                loadSamples("/Test3/Test_input.wav", (int) SAMPLE_RATE));
+    }
+
+    @Test
+    public void MagCacheTest() {
+        ToneMagCache cache = new ToneMagCache(1000);
+        float[] mags = {1.0f, 2.0f};
+        float[] res = new float[2];
+        cache.update(0, 500);
+        cache.store(100, 160, mags);
+        cache.store(400, 160, mags);            // not fully valid, not stored
+        assert cache.lookup(100, 160, res);
+        assert res[0] == 1.0f && res[1] == 2.0f;
+        assert !cache.lookup(100, 80, res);
+        assert !cache.lookup(400, 160, res);
+        cache.update(60, 440);                  // shift by 60: the window is at 40 now
+        assert !cache.lookup(100, 160, res);
+        assert cache.lookup(40, 160, res);
+        cache.update(1024, 500);                // same cache slot, but another window
+        assert !cache.lookup(40, 160, res);
+        cache.clear();
+        cache.update(0, 500);
+        assert !cache.lookup(0, 160, res);
+    }
+
+    @Test
+    public void DetectCarrierTest() {
+        Fsk fsk = new Fsk(SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH);
+        int nSamples = fsk.getFftSize();
+        FloatBuffer buf = FloatBuffer.allocate(nSamples);
+        for (int i = 0; i < nSamples; i++) {
+            buf.put(i, 0.5f * (float) Math.sin(2.0 * Math.PI * 1550.0 * i / SAMPLE_RATE));
+        }
+        assertEquals(31, fsk.fskDetectCarrier(buf, 0, nSamples, 0.001f));
+        assertEquals(31, fsk.fskDetectCarrier(buf, 0, nSamples, 0.0f));
+        assertEquals(-1, fsk.fskDetectCarrier(buf, 0, nSamples, 0.5f));
+    }
+
+    @Test
+    public void BandPowArgMaxTest() {
+        float[] cplr = {9.0f, 9.0f, 3.0f, 4.0f, 0.0f, 5.0f, 1.0f, 1.0f};
+        assertEquals(1, Fsk.bandPowArgMax(cplr, 1, 4, 0.0f));
+        assertEquals(1, Fsk.bandPowArgMax(cplr, 1, 4, 25.0f));
+        assertEquals(-1, Fsk.bandPowArgMax(cplr, 1, 4, 25.5f));
+        assertEquals(0, Fsk.bandPowArgMax(cplr, 0, 4, 0.0f));
+    }
+
+    @Test
+    public void MatchedFilterTest() {
+        int nSamples = FRAME_NSAMPLES / 11;
+        FloatBuffer buf = FloatBuffer.allocate(nSamples);
+        for (int i = 0; i < nSamples; i++) {
+            buf.put(i, 0.5f * (float) Math.cos(2.0 * Math.PI * MARK_F * i / SAMPLE_RATE + 1.0));
+        }
+        Fsk fsk = new Fsk(SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH);
+        float[] m1 = new float[2];
+        float[] m2 = new float[2];
+
+        // on the band centers it is the DFT of the window
+        IToneAnalyzer goertzel = new GoertzelToneAnalyzer(fsk.getFftSize());
+        IToneAnalyzer matched = new MatchedFilterToneAnalyzer(fsk.getFftSize());
+        goertzel.setBands(fsk.getbMark(), fsk.getbSpace());
+        matched.setBands(fsk.getbMark(), fsk.getbSpace());
+        goertzel.analyze(buf, 0, nSamples, m1);
+        matched.analyze(buf, 0, nSamples, m2);
+        assertEquals(m1[0], m2[0], 1.0e-4f);
+        assertEquals(m1[1], m2[1], 1.0e-4f);
+
+        // on the exact tones the full amplitude is seen
+        matched.setTones(MARK_F / SAMPLE_RATE, SPACE_F / SAMPLE_RATE);
+        matched.analyze(buf, 0, nSamples, m2);
+        assertEquals(0.5f, m2[0], 0.03f);
+        assert m2[0] > m1[0];
+    }
+
+    @Test
+    public void BandMagTest() {
+        float[] cplr = {0.0f, 0.0f, 3.0f, 4.0f};
+        assertEquals(5.0f, Fsk.bandMag(cplr, 1, 1.0f));
+        assertEquals(2.5f, Fsk.bandMag(cplr, 1, 0.5f));
+    }
+
+    @Test
+    public void CarrierDetectorTest() {
+        Fsk fsk = new Fsk(SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH);
+        int nSamples = fsk.getFftSize();
+        FloatBuffer buf = FloatBuffer.allocate(nSamples * 4);
+        for (int i = 0; i < buf.capacity(); i++) {
+            buf.put(i, 0.5f * (float) Math.sin(2.0 * Math.PI * 1550.0 * i / SAMPLE_RATE));
+        }
+        CarrierDetector detector = new CarrierDetector(nSamples, 0.001f, 3);
+        assertEquals(-1, detector.addSegment(buf, 0, nSamples));
+        assertEquals(-1, detector.addSegment(buf, nSamples, nSamples));
+        assertEquals(31, detector.addSegment(buf, nSamples * 2, nSamples));
+        detector.reset();
+        assertEquals(-1, detector.addSegment(buf, nSamples * 3, nSamples));
+
+        CarrierDetector deaf = new CarrierDetector(nSamples, 0.5f, 1);
+        assertEquals(-1, deaf.addSegment(buf, 0, nSamples));
+    }
+
+    @Test
+    public void ChannelizerTest() {
+        assertEquals(4, Channelizer.chooseDecimation((int) SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH, 300.0f));
+        assertEquals(1, Channelizer.chooseDecimation(8000, MARK_F, SPACE_F, BANDWIDTH, 300.0f));
+
+        Channelizer ch = new Channelizer((int) SAMPLE_RATE, MARK_F, SPACE_F, BANDWIDTH, 300.0f);
+        int d = ch.getDecimation();
+        assertEquals(ch.getOutputRate() / 4.0f + 100.0f, ch.getMarkF());
+        assertEquals(ch.getOutputRate() / 4.0f - 100.0f, ch.getSpaceF());
+
+        int nIn = d * 4000;
+        FloatBuffer in = FloatBuffer.allocate(nIn);
+        for (int i = 0; i < nIn; i++) {
+            in.put(i, 0.5f * (float) Math.sin(2.0 * Math.PI * MARK_F * i / SAMPLE_RATE));
+        }
+        FloatBuffer out = FloatBuffer.allocate(nIn / d + 1);
+        // fed in odd sized chunks: the state shall persist between the calls
+        int nOut = 0;
+        for (int p = 0; p < nIn; p += 1001) {
+            nOut += ch.process(in, p, Math.min(1001, nIn - p), out, nOut);
+        }
+        assertEquals(nIn / d, nOut);
+
+        Fsk fsk = new Fsk(ch.getOutputRate(), ch.getMarkF(), ch.getSpaceF(), BANDWIDTH);
+        float[] mags = new float[2];
+        IToneAnalyzer analyzer = new GoertzelToneAnalyzer(fsk.getFftSize());
+        analyzer.setBands(fsk.getbMark(), fsk.getbSpace());
+        analyzer.analyze(out, nOut / 2, fsk.getFftSize(), mags);
+        assertEquals(0.5f, mags[0], 0.01f);
+        assert mags[1] < 0.05f;
+    }
+}
@@ -7,6 +7,9 @@ import static minimodem.simpleaudio.SaDirection.*;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static java.nio.ByteOrder.nativeOrder;
 
 import org.junit.jupiter.api.Test;
 
@@ -37,13 +40,81 @@ public class SimpleAudioTest {
             assert false;
         }
         assert (f.open(fOut,PCM_FLOAT, SA_TRANSMIT,48000, 1, false));
+        assert (f.fOutChannel != null);
+        assert (f.fTmpOut == null);
+        assert (f.clean());
+        assert (f.fOutChannel == null);
+        fOut.delete();
+    }
+
+    @Test
+    public void AfOpenCleanTstTmpW(){
+        SaAudioFile f = new SaAudioFile();
+        File fOut = null;
+        try {
+            fOut = File.createTempFile("minimodem-", ".au");
+        } catch (IOException e) {
+            assert false;
+        }
+        fOut.deleteOnExit();
+        assert (f.open(fOut,PCM_SIGNED, SA_TRANSMIT,48000, 1, false));
         assert (f.fTmpOut != null);
         assert (f.fTmpChannel != null);
+        assert (f.fOutChannel == null);
         assert (f.clean());
         assert (f.fTmpOut == null);
         assert (f.fTmpChannel == null);
     }
 
+    @Test
+    public void AfStreamingWavTst() throws Exception {
+        SaAudioFile f = new SaAudioFile();
+        File fOut = File.createTempFile("minimodem-", ".wav");
+        fOut.deleteOnExit();
+        assert (f.open(fOut, PCM_SIGNED, SA_TRANSMIT, 48000, 1, false));
+        ByteBuffer buf = ByteBuffer.allocate(200).order(nativeOrder());
+        assert (f.write(buf, 100) == 100);
+        // the header is there with the data while writing
+        assert (fOut.length() == 244);
+        f.close();
+        assert (fOut.length() == 244);
+        javax.sound.sampled.AudioInputStream in = javax.sound.sampled.AudioSystem.getAudioInputStream(fOut);
+        assert (in.getFrameLength() == 100);
+        assert (in.getFormat().getSampleRate() == 48000.0f);
+        in.close();
+    }
+
+    @Test
+    public void AfStreamingWavErrorTst() throws Exception {
+        SaAudioFile f = new SaAudioFile();
+        File fOut = File.createTempFile("minimodem-", ".wav");
+        fOut.deleteOnExit();
+        assert (f.open(fOut, PCM_SIGNED, SA_TRANSMIT, 48000, 1, false));
+        // a failing write to the output file is reported, not thrown
+        f.fOutChannel.close();
+        assert (f.write(ByteBuffer.allocate(200), 100) == -1);
+        f.close();
+    }
+
+    @Test
+    public void AfStreamingWavLimitTst() throws Exception {
+        SaAudioFile f = new SaAudioFile();
+        File fOut = File.createTempFile("minimodem-", ".wav");
+        fOut.deleteOnExit();
+        assert (f.open(fOut, PCM_SIGNED, SA_TRANSMIT, 48000, 1, false));
+        // the sizes are unsigned 32-bit
+        ByteBuffer hdr = f.wavHeader(0xFFFFFFFFL - 36).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        assert (Integer.toUnsignedLong(hdr.getInt(4)) == 0xFFFFFFFFL);
+        assert (Integer.toUnsignedLong(hdr.getInt(40)) == 0xFFFFFFFFL - 36);
+        // a write past 4 GiB is refused (the position is moved there, nothing is written)
+        f.fOutChannel.position(0xFFFFFFFFL - 8 - 100);
+        assert (f.write(ByteBuffer.allocate(200), 100) == -1);
+        f.fOutChannel.position(44);
+        assert (f.write(ByteBuffer.allocate(200), 100) == 100);
+        f.close();
+        assert (fOut.length() == 244);
+    }
+
     @Test
     public void AfOpenCleanTstR(){
         SaAudioFile f = new SaAudioFile();
@@ -78,4 +149,238 @@ public class SimpleAudioTest {
         String rs = new String(buf.array());
         assert rs.equals("1234");
     }
+
+    private static void compareReaders(SimpleAudio a, SimpleAudio b) {
+        ByteBuffer bufA = ByteBuffer.allocate(4096 * 4).order(nativeOrder());
+        ByteBuffer bufB = ByteBuffer.allocate(4096 * 4).order(nativeOrder());
+        int total = 0;
+        int nA, nB;
+        do {
+            nA = a.read(bufA, 100, 1000);
+            nB = b.read(bufB, 100, 1000);
+            assert nA == nB;
+            for (int i = 0; i < nA; i++) {
+                assert bufA.getFloat((100 + i) * 4) == bufB.getFloat((100 + i) * 4);
+            }
+            total += nA;
+        } while (nA > 0);
+        assert total > 0;
+        assert a.getRate() == b.getRate();
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void MappedWavTst() {
+        File fIn = new File(this.getClass().getResource("/Test3/test_input.wav").getFile());
+        SaAudioFile f = new SaAudioFile();
+        SaMappedWavFile m = new SaMappedWavFile();
+        assert f.open(fIn, PCM_FLOAT, SA_RECEIVE, 48000, 1, false);
+        assert m.open(fIn, PCM_FLOAT, SA_RECEIVE, 48000, 1, false);
+        assert m.getEncoding() == PCM_SIGNED;
+        compareReaders(f, m);
+
+        File fOut = null;
+        try {
+            fOut = File.createTempFile("minimodem-", ".wav");
+        } catch (IOException e) {
+            assert false;
+        }
+        fOut.deleteOnExit();
+        assert f.open(fOut, PCM_FLOAT, SA_TRANSMIT, 8000, 1, false);
+        ByteBuffer buf = ByteBuffer.allocate(3333 * 4).order(nativeOrder());
+        for (int i = 0; i < 3333; i++) {
+            buf.putFloat(i * 4, (float) Math.sin(i * 0.1));
+        }
+        assert f.write(buf, 3333) == 3333;
+        f.close();
+        assert f.open(fOut, PCM_FLOAT, SA_RECEIVE, 8000, 1, false);
+        assert m.open(fOut, PCM_FLOAT, SA_RECEIVE, 8000, 1, false);
+        assert m.getEncoding() == PCM_FLOAT;
+        compareReaders(f, m);
+
+        // not a RIFF file, and transmit: left for SaAudioFile
+        assert !m.open(new File(this.getClass().getResource("/Test3/test_output.txt").getFile()),
+                PCM_FLOAT, SA_RECEIVE, 48000, 1, false);
+        assert !m.open(fOut, PCM_FLOAT, SA_TRANSMIT, 8000, 1, false);
+    }
+
+    @Test
+    public void ReadAheadTst() {
+        File fIn = new File(this.getClass().getResource("/Test3/test_input.wav").getFile());
+        SaAudioFile f = new SaAudioFile();
+        SaAudioFile g = new SaAudioFile();
+        assert f.open(fIn, PCM_FLOAT, SA_RECEIVE, 48000, 1, false);
+        assert g.open(fIn, PCM_FLOAT, SA_RECEIVE, 48000, 1, false);
+        compareReaders(f, new SaReadAhead(g, 3));
+    }
+
+    private static float[] convert(PcmConverter c, int... bytes) {
+        byte[] raw = c.getBytes(bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            raw[i] = (byte) bytes[i];
+        }
+        return c.convert(2);
+    }
+
+    @Test
+    public void PcmConverterTst() {
+        assert PcmConverter.isSupported(24, false);
+        assert !PcmConverter.isSupported(24, true);
+        assert !PcmConverter.isSupported(32, false);
+
+        float[] f = convert(new PcmConverter(8, false, false), 0x7F, 0x81);
+        assert f[0] == 1.0f && f[1] == -1.0f;
+        f = convert(new PcmConverter(8, false, true), 0xFF, 0x01);
+        assert f[0] == 1.0f && f[1] == -1.0f;
+        f = convert(new PcmConverter(16, false, false), 0xFF, 0x7F, 0x00, 0xC0);
+        assert f[0] == 1.0f && f[1] == -16384.0f / Short.MAX_VALUE;
+        f = convert(new PcmConverter(16, true, false), 0x7F, 0xFF, 0xC0, 0x00);
+        assert f[0] == 1.0f && f[1] == -16384.0f / Short.MAX_VALUE;
+        f = convert(new PcmConverter(24, false, false), 0xFF, 0xFF, 0x7F, 0x01, 0x00, 0x80);
+        assert f[0] == 1.0f && f[1] == -1.0f;
+        f = convert(new PcmConverter(24, true, false), 0x7F, 0xFF, 0xFF, 0x80, 0x00, 0x01);
+        assert f[0] == 1.0f && f[1] == -1.0f;
+    }
+
+    /**
+     * Transmit audio device that keeps the samples written
+     */
+    private static class CaptureAudio extends SimpleAudio {
+        FloatBuffer samples = FloatBuffer.allocate(1 << 20);
+        int nWrites = 0;
+
+        public int read(ByteBuffer byteBuf, int pFrames, int nFrames) {
+            return -1;
+        }
+
+        public int write(ByteBuffer byteBuf, int nFrames) {
+            FloatBuffer src = byteBuf.duplicate().order(nativeOrder()).asFloatBuffer();
+            assert src.remaining() == nFrames;
+            samples.put(src);
+            nWrites++;
+            return nFrames;
+        }
+
+        public void close() {
+        }
+    }
+
+    @Test
+    public void ToneBlockTst() {
+        CaptureAudio out = new CaptureAudio();
+        assert out.open(PCM_FLOAT, SA_TRANSMIT, 48000, 1, false);
+        SaToneGenerator gen = new SaToneGenerator();
+        gen.toneInit(1024, 1.0f);
+        gen.Tone(out, 1000.0f, 20_000);
+        assert out.nWrites == 2;            // full blocks only
+        gen.Tone(out, 0.0f, 100);
+        gen.flush(out);
+        assert out.nWrites == 3;
+        assert out.samples.position() == 20_100;
+        for (int i = 0; i < 20_000; i++) {
+            assert Math.abs(out.samples.get(i) - Math.sin(2.0 * Math.PI * i / 48.0)) < 0.01;
+        }
+        for (int i = 20_000; i < 20_100; i++) {
+            assert out.samples.get(i) == 0.0f;
+        }
+        gen.flush(out);
+        assert out.nWrites == 3;
+    }
+
+    @Test
+    public void NcoTst() {
+        for (OscillatorType osc : new OscillatorType[] {OscillatorType.NCO, OscillatorType.NCO_LINEAR}) {
+            CaptureAudio out = new CaptureAudio();
+            assert out.open(PCM_FLOAT, SA_TRANSMIT, 48000, 1, false);
+            SaToneGenerator gen = new SaToneGenerator();
+            gen.toneInit(1000, 1.0f, osc);         // table of 1024 entries
+            // the phase is continuous across tones of the same frequency
+            for (int k = 0; k < 100; k++) {
+                gen.Tone(out, 1234.5f, 997);
+            }
+            gen.flush(out);
+            double tolerance = osc == OscillatorType.NCO ? 2.0 * Math.PI / 2048 + 1e-6 : 1e-4;
+            for (int i = 0; i < 99_700; i++) {
+                assert Math.abs(out.samples.get(i) - Math.sin(2.0 * Math.PI * 1234.5 * i / 48000.0)) < tolerance;
+            }
+        }
+    }
+
+    @Test
+    public void NcoTableSizeTst() {
+        // --lut 8 gives an 8 entry table: the nearest entry is one of sin(2 pi k / 8)
+        CaptureAudio out = new CaptureAudio();
+        assert out.open(PCM_FLOAT, SA_TRANSMIT, 48000, 1, false);
+        SaToneGenerator gen = new SaToneGenerator();
+        gen.toneInit(8, 1.0f, OscillatorType.NCO);
+        gen.Tone(out, 1234.5f, 1000);
+        gen.flush(out);
+        for (int i = 0; i < 1000; i++) {
+            boolean found = false;
+            for (int k = 0; k < 8; k++) {
+                found |= Math.abs(out.samples.get(i) - Math.sin(2.0 * Math.PI * k / 8)) < 1e-6;
+            }
+            assert found;
+        }
+    }
+
+    @Test
+    public void WaveformCacheTst() {
+        for (OscillatorType osc : new OscillatorType[] {OscillatorType.NCO, OscillatorType.NCO_LINEAR}) {
+            CaptureAudio out = new CaptureAudio();
+            assert out.open(PCM_FLOAT, SA_TRANSMIT, 48000, 1, false);
+            SaToneGenerator gen = new SaToneGenerator();
+            gen.toneInit(1000, 1.0f, osc);
+            gen.toneEnableCache(true);
+            // mark/space symbols: the starting phase is rounded, the NCO phase is not
+            double phase = 0.0;
+            double[] expected = new double[100 * 40];
+            for (int k = 0; k < 100; k++) {
+                float freq = k % 3 == 0 ? 1200.0f : 2200.0f;
+                gen.Tone(out, freq, 40);
+                for (int i = 0; i < 40; i++) {
+                    expected[k * 40 + i] = Math.sin(phase + 2.0 * Math.PI * freq * i / 48000.0);
+                }
+                phase += 2.0 * Math.PI * freq * 40 / 48000.0;
+            }
+            gen.flush(out);
+            double tolerance = 2.0 * Math.PI / 512 + (osc == OscillatorType.NCO ? 2.0 * Math.PI / 2048 : 1e-4);
+            for (int i = 0; i < expected.length; i++) {
+                assert Math.abs(out.samples.get(i) - expected[i]) < tolerance;
+            }
+        }
+    }
+
+    @Test
+    public void ShapingTst() {
+        double[] leakage = new double[2];
+        for (int k = 0; k < 2; k++) {
+            CaptureAudio out = new CaptureAudio();
+            assert out.open(PCM_FLOAT, SA_TRANSMIT, 48000, 1, false);
+            SaToneGenerator gen = new SaToneGenerator();
+            gen.toneInit(4096, 1.0f, OscillatorType.NCO_LINEAR);
+            gen.toneShaping(k == 0 ? 0 : 40);
+            // 1200 bps mark/space bits, 40 samples each
+            for (int bit = 0; bit < 480; bit++) {
+                gen.Tone(out, (bit * 7 / 3) % 2 == 0 ? 1200.0f : 2200.0f, 40);
+            }
+            gen.flush(out);
+            // power far out of the channel (6..12 kHz)
+            for (double f = 6000.0; f <= 12000.0; f += 50.0) {
+                double re = 0.0;
+                double im = 0.0;
+                for (int i = 0; i < 19_200; i++) {
+                    re += out.samples.get(i) * Math.cos(2.0 * Math.PI * f * i / 48000.0);
+                    im += out.samples.get(i) * Math.sin(2.0 * Math.PI * f * i / 48000.0);
+                }
+                leakage[k] += re * re + im * im;
+            }
+            // the phase is continuous: no jumps between the samples
+            for (int i = 1; i < 19_200; i++) {
+                assert Math.abs(out.samples.get(i) - out.samples.get(i - 1)) < 2.0 * Math.PI * 2200.0 / 48000.0 + 1e-3;
+            }
+        }
+        assert leakage[1] < leakage[0] / 10.0;
+    }
 }